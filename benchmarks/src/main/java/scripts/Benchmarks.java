@@ -0,0 +1,67 @@
+package scripts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+
+/**
+ * Benchmarks class
+ *
+ * Entry point of benchmarks.jar. Runs the JMH benchmarks (EngineBenchmark, RenderBenchmark) with the given JMH
+ * options and writes the results as JSON to jmh-result.json, unless another format or file is given with -rf and
+ * -rff, so that runs of different engine implementations can be compared side by side.
+ *
+ * Usage:
+ * 		java -jar benchmarks/target/benchmarks.jar [JMH options, e.g. EngineBenchmark -p shape=4]
+ *
+ * @author Kevin1031
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		if(!options.contains("-rf")) options.addAll(Arrays.asList("-rf", "json"));
+		if(!options.contains("-rff")) options.addAll(Arrays.asList("-rff", "jmh-result.json"));
+		org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+	}
+
+
+
+	/**
+	 * Returns the rules of a benchmark's shape parameter: a board size, or "cube"
+	 *
+	 * @param shape
+	 * @return rules
+	 */
+	static Rules rules(String shape) {
+		return shape.equals("cube") ? Rules.CUBE : Rules.of(Integer.parseInt(shape));
+	}
+
+
+
+	/**
+	 * Plays random games from a fixed seed and keeps every position in which a move is still possible
+	 *
+	 * @param rules
+	 * @param count number of positions
+	 * @return games, one per position, each in its own state
+	 */
+	static GameState[] positions(Rules rules, int count) {
+		GameState[] positions = new GameState[count];
+		Spawner random = new Spawner(2048);
+		char[] directions = rules.directions();
+
+		GameState game = new GameState(rules, new Spawner(1));
+		game.reset();
+		for(int i = 0; i < count; ) {
+			if(!game.canMove()) {
+				game = new GameState(rules, random.split());
+				game.reset();
+			}
+			if(game.move(directions[random.nextInt(directions.length)]) && game.canMove()) positions[i++] = game.copy();
+		}
+		return positions;
+	}
+}
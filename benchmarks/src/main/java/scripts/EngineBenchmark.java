@@ -0,0 +1,159 @@
+package scripts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * EngineBenchmark class
+ *
+ * Benchmarks of the game engine on every board shape: Grid.shift (the move as the window makes it, including the
+ * copy into Grid.grid) and GameState.move per direction, canMove, getMax, addRandomBlock, and a whole random game.
+ *
+ * Moves change the board, so every call starts from the next of POSITIONS positions taken from random games
+ * (GameState.restore). The load benchmark measures that restore alone, to be subtracted from the others.
+ *
+ * @author Kevin1031
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+	private static final int POSITIONS = 1024;
+
+	@Param({"4", "6", "cube"})
+	public String shape;
+
+	private Rules rules;
+	private long[][] boards;
+	private int[] scores, maxes;
+	private int index = 0;
+
+	// Seed of the next random game
+	private long seed = 0;
+
+
+
+	/**
+	 * Direction class
+	 *
+	 * Direction of the shift benchmarks; W, A, S and D exist on every shape
+	 */
+	@State(Scope.Thread)
+	public static class Direction {
+
+		@Param({"W", "A", "S", "D"})
+		public String name;
+
+		char dir;
+
+		@Setup
+		public void setup() {
+			dir = name.charAt(0);
+		}
+	}
+
+
+
+	@Setup
+	public void setup() {
+		Log.level = Log.Level.OFF;
+		rules = Benchmarks.rules(shape);
+
+		GameState[] positions = Benchmarks.positions(rules, POSITIONS);
+		boards = new long[POSITIONS][rules.words()];
+		scores = new int[POSITIONS];
+		maxes = new int[POSITIONS];
+		for(int i = 0; i < POSITIONS; i++) {
+			positions[i].save(boards[i], 0);
+			scores[i] = positions[i].getScore();
+			maxes[i] = positions[i].getMax();
+		}
+
+		Main.game = new GameState(rules, new Spawner(3));
+		Grid.resize();
+	}
+
+	// Next position's board
+	private long[] next() {
+		index = (index + 1) & (POSITIONS - 1);
+		return boards[index];
+	}
+
+	// Puts the next position into Main.game
+	private void restoreNext() {
+		long[] board = next();
+		Main.game.restore(board, 0, scores[index], maxes[index]);
+	}
+
+
+
+	@Benchmark
+	public int load() {
+		restoreNext();
+		return Main.game.getScore();
+	}
+
+	@Benchmark
+	public int gridShift(Direction direction) {
+		restoreNext();
+		Grid.shift(direction.dir);
+		return Grid.events.size();
+	}
+
+	@Benchmark
+	public boolean move(Direction direction) {
+		restoreNext();
+		return Main.game.move(direction.dir);
+	}
+
+	@Benchmark
+	public boolean canMove() {
+		return rules.canMove(next());
+	}
+
+	@Benchmark
+	public int getMax() {
+		return rules.getMax(next());
+	}
+
+	@Benchmark
+	public int addRandomBlock() {
+		restoreNext();
+		Grid.addRandomBlock();
+		return Main.game.getLastSpawnCell();
+	}
+
+
+
+	/**
+	 * Plays a whole game with random moves
+	 * Directions that do not move the board are tried again and not counted
+	 *
+	 * @return number of valid moves the game lasted, which GameState keeps as its score
+	 */
+	@Benchmark
+	public int randomGame() {
+		GameState game = new GameState(rules, new Spawner(seed++));
+		char[] directions = rules.directions();
+		game.reset();
+		while(!game.isOver()) game.move(directions[game.getSpawner().nextInt(directions.length)]);
+		return game.getScore();
+	}
+}
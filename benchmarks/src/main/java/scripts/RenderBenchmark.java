@@ -0,0 +1,74 @@
+package scripts;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * RenderBenchmark class
+ *
+ * Benchmarks PanelComponents.paintComponent, drawn offscreen into a BufferedImage in a headless JVM, so it runs
+ * without a display. The board is a position from a random game; blocksOnly draws the blocks without the
+ * background and scoreboard.
+ *
+ * @author Kevin1031
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	@Param({"4", "8", "cube"})
+	public String shape;
+
+	private PanelComponents panel;
+	private BufferedImage image;
+
+
+
+	@Setup
+	public void setup() {
+		Log.level = Log.Level.OFF;
+		Main.game = Benchmarks.positions(Benchmarks.rules(shape), 200)[199];
+		Grid.resize();
+		Main.game.toGrid(Grid.grid);
+
+		panel = new PanelComponents(Grid.grid);
+		image = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+	}
+
+
+
+	@Benchmark
+	public BufferedImage paintComponent() {
+		Graphics2D g = image.createGraphics();
+		panel.paintComponent(g);
+		g.dispose();
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage blocksOnly() {
+		Graphics2D g = image.createGraphics();
+		panel.drawBlocks(g);
+		g.dispose();
+		return image;
+	}
+}
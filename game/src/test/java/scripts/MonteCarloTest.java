@@ -0,0 +1,57 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+
+
+/**
+ * MonteCarloTest class
+ *
+ * Checks that MonteCarlo still chooses between the directions on boards whose rollouts are cut off
+ *
+ * @author Kevin1031
+ */
+class MonteCarloTest {
+
+	@Test
+	void choosesDifferentDirectionsOn6x6() {
+		assertSpread(Rules.of(6));
+	}
+
+
+
+	@Test
+	void choosesDifferentDirectionsOnCube() {
+		assertSpread(Rules.CUBE);
+	}
+
+
+
+	/**
+	 * Asks for the first move of new games, which can go any way; no direction may be chosen for most of them,
+	 * as it would be if rollouts that were cut off all scored the same
+	 *
+	 * @param rules
+	 */
+	private static void assertSpread(Rules rules) {
+		MonteCarlo player = new MonteCarlo(20, 0, ForkJoinPool.commonPool());
+		char[] directions = rules.directions();
+		int[] chosen = new int[directions.length];
+		int games = 60;
+
+		for(int seed = 0; seed < games; seed++) {
+			GameState game = new GameState(rules, new Spawner(seed));
+			game.reset();
+			char dir = player.nextMove(game);
+			for(int i = 0; i < directions.length; i++) if(directions[i] == dir) chosen[i]++;
+		}
+
+		for(int i = 0; i < directions.length; i++) {
+			assertTrue(chosen[i] <= games / 2, directions[i] + " chosen for " + chosen[i] + " of " + games + " games");
+		}
+	}
+}
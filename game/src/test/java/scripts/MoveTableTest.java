@@ -0,0 +1,100 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+
+/**
+ * MoveTableTest class
+ *
+ * Checks every entry of the row tables against a plain shift of the row as a list of exponents, which shares no
+ * code with Board.shiftRow
+ *
+ * @author Kevin1031
+ */
+class MoveTableTest {
+
+	@Test
+	void scoresEveryMerge() {
+		// 2, 2, 4, 4 merges into 4 and 8; the new 4 must not be mistaken for one of the old ones
+		int row = 1 | 1 << 4 | 2 << 8 | 2 << 12;
+		assertEquals(2 | 3 << 4, MoveTable.left(row));
+		assertEquals(12, MoveTable.leftScore(row));
+		assertEquals(12, MoveTable.rightScore(row));
+	}
+
+
+
+	@Test
+	void matchesPlainShiftOfEveryRow() {
+		for(int row = 0; row < 65536; row++) {
+			long left = plainShift(row, 4, false), right = plainShift(row, 4, true);
+			assertEquals((int)left, MoveTable.left(row), "left of " + Integer.toHexString(row));
+			assertEquals((int)(left >>> 32), MoveTable.leftScore(row), "left score of " + Integer.toHexString(row));
+			assertEquals((int)right, MoveTable.right(row), "right of " + Integer.toHexString(row));
+			assertEquals((int)(right >>> 32), MoveTable.rightScore(row), "right score of " + Integer.toHexString(row));
+		}
+	}
+
+
+
+	@Test
+	void scoresBoardsByColumnsAndRows() {
+		Spawner spawner = new Spawner(1);
+		for(int i = 0; i < 10000; i++) {
+			long board = 0;
+			for(int cell = 0; cell < 16; cell++) board |= (long)spawner.nextInt(5) << (cell << 2);
+			long transposed = MoveTable.transpose(board);
+			int left = 0, right = 0, up = 0, down = 0;
+			for(int y = 0; y < 4; y++) {
+				left += (int)(plainShift((int)(board >>> (y << 4) & 0xFFFF), 4, false) >>> 32);
+				right += (int)(plainShift((int)(board >>> (y << 4) & 0xFFFF), 4, true) >>> 32);
+				up += (int)(plainShift((int)(transposed >>> (y << 4) & 0xFFFF), 4, false) >>> 32);
+				down += (int)(plainShift((int)(transposed >>> (y << 4) & 0xFFFF), 4, true) >>> 32);
+			}
+			assertEquals(left, MoveTable.score(board, 'A'));
+			assertEquals(right, MoveTable.score(board, 'D'));
+			assertEquals(up, MoveTable.score(board, 'W'));
+			assertEquals(down, MoveTable.score(board, 'S'));
+		}
+	}
+
+
+
+	/**
+	 * Shifts a row the slow way: takes out its blocks in the order they move, merges equal neighbours once and
+	 * puts them back
+	 *
+	 * @param row
+	 * @param size number of slots in the row
+	 * @param right
+	 * @return shifted row in the low 32 bits, score above them
+	 */
+	static long plainShift(int row, int size, boolean right) {
+		List<Integer> blocks = new ArrayList<>();
+		for(int i = 0; i < size; i++) {
+			int exponent = row >>> ((right ? size - 1 - i : i) << 2) & 0xF;
+			if(exponent != 0) blocks.add(exponent);
+		}
+
+		List<Integer> merged = new ArrayList<>();
+		int score = 0;
+		for(int i = 0; i < blocks.size(); i++) {
+			int exponent = blocks.get(i);
+			if(i + 1 < blocks.size() && blocks.get(i + 1) == exponent && exponent < 15) {
+				merged.add(exponent + 1);
+				score += 1 << (exponent + 1);
+				i++;
+			} else merged.add(exponent);
+		}
+
+		long result = 0;
+		for(int i = 0; i < merged.size(); i++) result |= (long)merged.get(i) << ((right ? size - 1 - i : i) << 2);
+		return (long)score << 32 | result;
+	}
+}
@@ -0,0 +1,50 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+
+/**
+ * RowRulesTest class
+ *
+ * Checks the shifts of every board size other than 4x4, with and without row tables, against the plain shift of
+ * MoveTableTest applied to every row and column
+ *
+ * @author Kevin1031
+ */
+class RowRulesTest {
+
+	@Test
+	void matchesPlainShiftOfEveryLine() {
+		Spawner spawner = new Spawner(1);
+		for(int size : new int[] {3, 5, 6, 7, 8}) {
+			Rules rules = Rules.of(size);
+			long[] board = new long[rules.words()], result = new long[rules.words()];
+
+			for(int i = 0; i < 2000; i++) {
+				// Small exponents merge often; some 15s check that 32768 blocks stay apart
+				for(int cell = 0; cell < rules.cells(); cell++) rules.set(board, cell, spawner.nextInt(8) == 0 ? 15 : spawner.nextInt(4));
+
+				for(char dir : rules.directions()) {
+					boolean moved = rules.shift(board, dir, result), changed = false;
+					boolean columns = dir == 'W' || dir == 'S', right = dir == 'D' || dir == 'S';
+
+					for(int line = 0; line < size; line++) {
+						int row = 0;
+						for(int k = 0; k < size; k++) row |= rules.get(board, columns ? k * size + line : line * size + k) << (k << 2);
+						int expected = (int)MoveTableTest.plainShift(row, size, right);
+
+						for(int k = 0; k < size; k++) {
+							int cell = columns ? k * size + line : line * size + k;
+							assertEquals(expected >>> (k << 2) & 0xF, rules.get(result, cell), size + "x" + size + " " + dir + " slot " + cell);
+						}
+						changed |= expected != row;
+					}
+					assertEquals(changed, moved, size + "x" + size + " " + dir + " moved");
+				}
+			}
+		}
+	}
+}
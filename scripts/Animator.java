@@ -0,0 +1,111 @@
+package scripts;
+
+import javax.swing.Timer;
+
+
+
+/**
+ * Animator class
+ *
+ * Paces the block animations. A javax.swing.Timer fires on the event dispatch thread at the target frame rate
+ * and repaints the window; what is drawn depends only on the time elapsed since the animation started, not on
+ * how many frames were drawn. A frame that comes late (or is coalesced away by the Timer under load) is
+ * therefore simply skipped, and the animation always takes the same time.
+ *
+ * start() can be called from any thread and returns at once, so the game loop never waits for an animation.
+ * Starting a new animation while one is running replaces it.
+ *
+ * @author Kevin1031
+ */
+public class Animator {
+
+	private final Timer timer;
+	private final long durationNanos;
+
+	// Start time of the current animation (System.nanoTime), and whether one is running
+	private volatile long start;
+	private volatile boolean running = false;
+
+
+
+	/**
+	 * Creates an animator
+	 *
+	 * @param frame repaints the window; called on the event dispatch thread
+	 * @param fps target frames per second
+	 * @param durationMillis length of one animation
+	 */
+	public Animator(Runnable frame, int fps, long durationMillis) {
+		if(fps < 1) throw new IllegalArgumentException("Frame rate must be at least 1: " + fps);
+		this.durationNanos = durationMillis * 1000000;
+
+		timer = new Timer(Math.max(1, 1000 / fps), e -> {
+
+			// Stopping after the frame that reaches the end, which draws the blocks in their new places
+			if(System.nanoTime() - start >= durationNanos) {
+				running = false;
+				((Timer)e.getSource()).stop();
+			}
+			frame.run();
+		});
+		timer.setInitialDelay(0);
+		timer.setCoalesce(true);
+	}
+
+
+
+	/**
+	 * Starts (or restarts) the animation
+	 */
+	public void start() {
+		start = System.nanoTime();
+		running = true;
+		timer.restart();
+	}
+
+
+
+	/**
+	 * Stops the animation at once, e.g. when the board jumps to another position
+	 */
+	public void stop() {
+		running = false;
+		timer.stop();
+	}
+
+
+
+	/**
+	 * Indicates that an animation is being played
+	 *
+	 * @return running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+
+
+	/**
+	 * Returns how far the animation has progressed, from 0 to 1, eased so that blocks slow down as they arrive
+	 *
+	 * @return progress
+	 */
+	public double progress() {
+		double t = Math.min(1, (System.nanoTime() - start) / (double)durationNanos);
+		return ease(t);
+	}
+
+
+
+	/**
+	 * Cubic ease-out: fast at first, slowing down towards the end
+	 *
+	 * @param t from 0 to 1
+	 * @return eased t
+	 */
+	static double ease(double t) {
+		double left = 1 - t;
+		return 1 - left * left * left;
+	}
+}
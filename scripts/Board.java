@@ -0,0 +1,251 @@
+package scripts;
+
+
+
+/**
+ * Board class
+ *
+ * This class performs the same game rules as the Grid class, but on a board packed into a single 64-bit long.
+ * Each of the 16 slots is stored as a 4-bit exponent (nibble) instead of the block's number:
+ * 		0 = empty, 1 = 2, 2 = 4, 3 = 8, ... 15 = 32768
+ * A nibble cannot hold 65536, so two 32768 blocks do not merge; they stay side by side like any unequal pair.
+ *
+ * Slot (x, y) is stored in nibble (y*4 + x), so each row (constant y) occupies 16 consecutive bits with x = 0
+ * in the lowest nibble. Since a board is a plain long, it can be copied by value and passed around freely;
+ * all methods here are pure functions that return a new board rather than modifying any state.
+ *
+ * @author Kevin1031
+ */
+public class Board {
+
+	// Board with every slot empty
+	public static final long EMPTY = 0L;
+
+	// Number of slots along each side of the board
+	public static final int SIZE = 4;
+
+	// The four shift directions: up, left, down, right
+	static final char[] DIRECTIONS = {'W', 'A', 'S', 'D'};
+
+	// Mask of a single slot
+	static final long CELL_MASK = 0xFL;
+
+
+
+	/**
+	 * Returns the exponent stored at the given slot (0 if empty)
+	 *
+	 * @param board
+	 * @param x
+	 * @param y
+	 * @return exponent
+	 */
+	public static int get(long board, int x, int y) {
+		return (int)(board >>> ((y*SIZE + x) << 2) & CELL_MASK);
+	}
+
+
+
+	/**
+	 * Returns a copy of the board with the exponent at the given slot replaced
+	 *
+	 * @param board
+	 * @param x
+	 * @param y
+	 * @param exponent
+	 * @return board
+	 */
+	public static long set(long board, int x, int y, int exponent) {
+		int shift = (y*SIZE + x) << 2;
+		return board & ~(CELL_MASK << shift) | ((long)exponent & CELL_MASK) << shift;
+	}
+
+
+
+	/**
+	 * Converts an exponent into the block's number (0 stays 0)
+	 *
+	 * @param exponent
+	 * @return value
+	 */
+	public static int toValue(int exponent) {
+		return exponent == 0 ? 0 : 1 << exponent;
+	}
+
+
+
+	/**
+	 * Converts a block's number into its exponent (empty values, 0 or -1, become 0)
+	 *
+	 * @param value
+	 * @return exponent
+	 */
+	public static int toExponent(int value) {
+		return value <= 0 ? 0 : Integer.numberOfTrailingZeros(value);
+	}
+
+
+
+	/**
+	 * Counts the number of empty slots
+	 *
+	 * @param board
+	 * @return count
+	 */
+	public static int countEmpty(long board) {
+		return Long.bitCount(emptyMask(board));
+	}
+
+
+
+	/**
+	 * Returns a mask with the lowest bit of every empty slot's nibble set
+	 *
+	 * @param board
+	 * @return mask
+	 */
+	public static long emptyMask(long board) {
+
+		// Folding every nibble into its lowest bit; the bit is 0 only if the whole nibble is 0
+		long x = board | board >>> 1;
+		x |= x >>> 2;
+		return ~x & 0x1111111111111111L;
+	}
+
+
+
+	/**
+	 * Shifts the blocks to one of the four directions (up, down, left, right)
+	 * W = up
+	 * S = down
+	 * D = right
+	 * A = left
+	 *
+	 * Follows the same merging rules as Grid.shift; a merged block cannot merge again during the same shift.
+	 * Does not spawn a new block. Returns the same board if nothing could move.
+	 * The work is done by table lookups in the MoveTable class.
+	 *
+	 * @param board
+	 * @param dir
+	 * @return board
+	 */
+	public static long shift(long board, char dir) {
+		return MoveTable.shift(board, dir);
+	}
+
+
+
+	/**
+	 * Shifts a row of up to 8 slots towards its lowest (or highest) nibble, merging equal neighbours once, and adds
+	 * up the score
+	 * Every board of the game is shifted by this routine: it fills the row tables of MoveTable and RowRules and
+	 * shifts the rows that are too long for tables (Rules.events only lists the moves for the animation)
+	 * Every merge of two blocks of exponent e scores 2^(e+1), the new block
+	 *
+	 * @param row
+	 * @param size number of slots in the row
+	 * @param towardsHigh
+	 * @return shifted row in the low 32 bits, score of its merges above them
+	 */
+	static long shiftRow(int row, int size, boolean towardsHigh) {
+		int step = towardsHigh ? -1 : 1, first = towardsHigh ? size-1 : 0;
+		int target = first, last = 0, score = 0;
+		long result = 0;
+
+		for(int k = 0, i = first; k < size; k++, i += step) {
+			int exponent = row >>> (i << 2) & 0xF;
+			if(exponent == 0) continue;
+
+			// Merging with the previous block if it has the same value and has not merged yet
+			// Exponent 15 (32768) is the largest a nibble can hold, so those blocks never merge
+			if(exponent == last && exponent < 15) {
+				result += 1L << ((target - step) << 2);
+				score += 1 << (exponent + 1);
+				last = 0;
+			} else {
+				result |= (long)exponent << (target << 2);
+				last = exponent;
+				target += step;
+			}
+		}
+		return (long)score << 32 | result;
+	}
+
+
+
+	/**
+	 * Searches and returns the block with the highest value in the board
+	 *
+	 * @param board
+	 * @return max
+	 */
+	public static int getMax(long board) {
+		int max = 0;
+		for(int i = 0; i < 16; i++) {
+			int exponent = (int)(board >>> (i << 2) & CELL_MASK);
+			if(exponent > max) max = exponent;
+		}
+		return toValue(max);
+	}
+
+
+
+	/**
+	 * Checks if any of the four moves would change the board
+	 *
+	 * @param board
+	 * @return canMove
+	 */
+	public static boolean canMove(long board) {
+		if(countEmpty(board) > 0) return true;
+
+		// With a full board, a move is only possible if two neighbours are equal
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				int value = get(board, x, y);
+				if(value == 15) continue;
+				if(x < SIZE-1 && value == get(board, x+1, y)) return true;
+				if(y < SIZE-1 && value == get(board, x, y+1)) return true;
+			}
+		}
+		return false;
+	}
+
+
+
+	/**
+	 * Converts a packed board into the int[x][y] layout used by Grid (-1 indicates "empty")
+	 * The given array is filled and returned so that callers such as PanelComponents can reuse it
+	 *
+	 * @param board
+	 * @param grid
+	 * @return grid
+	 */
+	public static int[][] toGrid(long board, int[][] grid) {
+		for(int x = 0; x < SIZE; x++) {
+			for(int y = 0; y < SIZE; y++) {
+				int exponent = get(board, x, y);
+				grid[x][y] = exponent == 0 ? -1 : 1 << exponent;
+			}
+		}
+		return grid;
+	}
+
+
+
+	/**
+	 * Packs an int[x][y] grid as used by Grid into a board
+	 *
+	 * @param grid
+	 * @return board
+	 */
+	public static long fromGrid(int[][] grid) {
+		long board = EMPTY;
+		for(int x = 0; x < SIZE; x++) {
+			for(int y = 0; y < SIZE; y++) {
+				board = set(board, x, y, toExponent(grid[x][y]));
+			}
+		}
+		return board;
+	}
+}
@@ -0,0 +1,207 @@
+package scripts;
+
+import java.util.concurrent.locks.StampedLock;
+
+
+
+/**
+ * Broadcast class
+ *
+ * Feeds the moves of one game to any number of spectators. The player's thread publishes every move once as a
+ * delta: the slots that changed (slid, merged and spawned blocks alike) with their new exponents, the score and
+ * the largest tile. Deltas go into a ring buffer of the last CAPACITY moves, next to a copy of the whole board.
+ *
+ * Every spectator reads at its own pace, keeping only a cursor (the number of moves it has seen). A spectator
+ * that is a few moves behind gets them coalesced into a single delta in which every slot appears once, and one
+ * that fell more than CAPACITY moves behind gets the whole board instead. Readers never lock: they copy what
+ * they need under an optimistic read stamp and try again if a move was published meanwhile (see StampedLock),
+ * so however many spectators there are, publishing a move only costs the player an uncontended write lock.
+ *
+ * @author Kevin1031
+ */
+public class Broadcast {
+
+	// Number of moves kept; a spectator further behind gets the whole board
+	static final int CAPACITY = 64;
+
+	private final int cells;
+	private final StampedLock lock = new StampedLock();
+
+	// Exponents of the board, as of the last published move
+	private final byte[] board;
+	private int score = 0, max = 0;
+
+	// Delta of move n in slot n % CAPACITY: counts[slot] entries of (cell << 4 | exponent) from changes[slot * cells]
+	private final int[] changes, counts, scores, maxes;
+
+	// Number of deltas published
+	private long head = 0;
+
+	private volatile boolean closed = false;
+
+
+
+	/**
+	 * Creates a broadcast of games with the given rules, with an empty board
+	 *
+	 * @param rules
+	 */
+	public Broadcast(Rules rules) {
+		cells = rules.cells();
+		board = new byte[cells];
+		changes = new int[CAPACITY * cells];
+		counts = new int[CAPACITY];
+		scores = new int[CAPACITY];
+		maxes = new int[CAPACITY];
+	}
+
+
+
+	/**
+	 * Publishes the game's board as the next delta: the slots that differ from the last published board
+	 * Only called by the player's thread
+	 *
+	 * @param game
+	 * @param text the changed slots are appended as " cell:exponent" (hex), ready for an "M" line
+	 */
+	public void publish(GameState game, StringBuilder text) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = (int)(head % CAPACITY), count = 0;
+			for(int cell = 0; cell < cells; cell++) {
+				int exponent = game.get(cell);
+				if(exponent == board[cell]) continue;
+				board[cell] = (byte)exponent;
+				changes[slot * cells + count++] = cell << 4 | exponent;
+				if(text != null) text.append(' ').append(cell).append(':').append(Character.forDigit(exponent, 16));
+			}
+			counts[slot] = count;
+			scores[slot] = score = game.getScore();
+			maxes[slot] = max = game.getMax();
+			head++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+
+
+	/**
+	 * Reads everything published after the given cursor into frame, coalesced into one delta, or the whole board
+	 * if the cursor is too far behind (or negative, for a spectator that has not seen anything yet)
+	 *
+	 * @param cursor number of deltas already seen
+	 * @param frame cleared first; empty if nothing new was published
+	 * @return the new cursor
+	 */
+	public long read(long cursor, Frame frame) {
+		for(int attempt = 1; ; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+
+			// A move is being published; the player may have been descheduled while publishing, so after a few
+			// tries the processor is given up instead of spinning
+			if(stamp == 0) {
+				if(attempt % 16 == 0) Thread.yield();
+				else Thread.onSpinWait();
+				continue;
+			}
+
+			frame.clear();
+			long end = head;
+			if(cursor < 0 || end - cursor > CAPACITY) {
+				frame.full = true;
+				for(int cell = 0; cell < cells; cell++) frame.set(cell, board[cell]);
+				frame.score = score;
+				frame.max = max;
+			} else if(end > cursor) {
+				for(long n = cursor; n < end; n++) {
+					int slot = (int)(n % CAPACITY), count = Math.min(counts[slot], cells);
+					for(int i = 0; i < count; i++) {
+						int change = changes[slot * cells + i];
+						frame.set(change >>> 4, change & 0xF);
+					}
+				}
+				int last = (int)((end - 1) % CAPACITY);
+				frame.score = scores[last];
+				frame.max = maxes[last];
+			}
+
+			// Anything read while a move was being published may be torn; it is read again
+			if(lock.validate(stamp)) return end;
+		}
+	}
+
+
+
+	/**
+	 * Marks the game as ended; spectators send what is left and stop
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public Frame frame() {
+		return new Frame(cells);
+	}
+
+
+
+	/**
+	 * Frame class
+	 *
+	 * What one spectator has not seen yet: the slots that changed since its cursor, each once, or the whole board
+	 * Owned by one spectator and reused for every read
+	 */
+	static class Frame {
+
+		private final byte[] exponents;
+		private final boolean[] changed;
+		private final int[] order;
+		private int count = 0;
+
+		boolean full = false;
+		int score, max;
+
+		Frame(int cells) {
+			exponents = new byte[cells];
+			changed = new boolean[cells];
+			order = new int[cells];
+		}
+
+		private void set(int cell, int exponent) {
+			if(!changed[cell]) {
+				changed[cell] = true;
+				order[count++] = cell;
+			}
+			exponents[cell] = (byte)exponent;
+		}
+
+		private void clear() {
+			for(int i = 0; i < count; i++) changed[order[i]] = false;
+			count = 0;
+			full = false;
+		}
+
+		boolean isEmpty() {
+			return count == 0 && !full;
+		}
+
+		/**
+		 * Writes the frame as a line of the GameServer protocol: "B" for the whole board, otherwise "M"
+		 *
+		 * @param text
+		 */
+		void write(StringBuilder text) {
+			text.append(full ? 'B' : 'M').append(' ').append(score).append(' ').append(max);
+			if(full) {
+				text.append(' ');
+				for(int cell = 0; cell < exponents.length; cell++) text.append(Character.forDigit(exponents[cell], 16));
+			} else for(int i = 0; i < count; i++) text.append(' ').append(order[i]).append(':').append(Character.forDigit(exponents[order[i]], 16));
+			text.append('\n');
+		}
+	}
+}
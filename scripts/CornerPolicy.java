@@ -0,0 +1,28 @@
+package scripts;
+
+
+
+/**
+ * CornerPolicy class
+ *
+ * Shifts into the first direction that moves the board, in the fixed priority order left, down, right, up.
+ * This keeps the large blocks gathered in the bottom-left corner, a common strategy for human players.
+ * Works on boards of any shape; the cube's in and out shifts are only used when nothing else moves.
+ *
+ * @author Kevin1031
+ */
+class CornerPolicy implements MovePolicy {
+
+	private static final char[] PRIORITY = {'A', 'S', 'D', 'W'};
+
+	@Override
+	public char nextMove(GameState game) {
+		for(char dir : PRIORITY) {
+			if(game.canShift(dir)) return dir;
+		}
+		for(char dir : game.getRules().directions()) {
+			if(game.canShift(dir)) return dir;
+		}
+		return PRIORITY[0];
+	}
+}
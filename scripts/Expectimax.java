@@ -0,0 +1,323 @@
+package scripts;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Expectimax class
+ *
+ * A MovePolicy that searches the game tree on packed boards (see Board class).
+ * Max nodes try all four shifts and keep the best; chance nodes average over every empty slot receiving a 2 or
+ * a 4, weighted the same way as the Spawner places blocks. Leaves are scored by a heuristic that is the sum of
+ * precomputed scores of the board's rows and columns.
+ *
+ * To keep the search fast:
+ * 	- chance branches whose probability of being reached falls below a cutoff are not expanded further
+ * 	- chance nodes are stored in a transposition table (see TranspositionTable) keyed by the canonical board
+ * 	  (see Symmetry), so boards reached by different move orders, and rotations and reflections of them, are
+ * 	  evaluated once
+ * 	- with a time budget, the search deepens one level at a time and stops when the budget is used up
+ *
+ * An instance is not thread-safe because of the state of its search; use one instance per thread. Instances
+ * created with the same table share what they evaluated, without locking; otherwise each has a table of its own.
+ * A shared table is aged by its owner (see TranspositionTable.newSearch()); a table of its own is aged by the
+ * instance at every move.
+ *
+ * @author Kevin1031
+ */
+public class Expectimax implements MovePolicy {
+
+	// Totals over all instances, for reporting searched nodes per millisecond
+	private static final LongAdder NODES = new LongAdder(), SEARCH_NANOS = new LongAdder();
+
+	// Heuristic weights
+	private static final float LOST_PENALTY = 200000f, MONOTONICITY_POWER = 4f, MONOTONICITY_WEIGHT = 47f,
+			SUM_POWER = 3.5f, SUM_WEIGHT = 11f, MERGES_WEIGHT = 700f, EMPTY_WEIGHT = 270f;
+
+	// Heuristic score of every possible row
+	private static final float[] ROW_HEURISTIC = new float[65536];
+
+	static {
+		for(int row = 0; row < 65536; row++) {
+			int[] line = {row & 0xF, row >>> 4 & 0xF, row >>> 8 & 0xF, row >>> 12 & 0xF};
+			float sum = 0;
+			int empty = 0, merges = 0, previous = 0, counter = 0;
+
+			for(int rank : line) {
+				sum += (float)Math.pow(rank, SUM_POWER);
+				if(rank == 0) {
+					empty++;
+				} else {
+					if(previous == rank) counter++;
+					else if(counter > 0) {
+						merges += 1 + counter;
+						counter = 0;
+					}
+					previous = rank;
+				}
+			}
+			if(counter > 0) merges += 1 + counter;
+
+			// Penalty for rows that are not sorted in either direction
+			float left = 0, right = 0;
+			for(int i = 1; i < 4; i++) {
+				float a = (float)Math.pow(line[i-1], MONOTONICITY_POWER), b = (float)Math.pow(line[i], MONOTONICITY_POWER);
+				if(line[i-1] > line[i]) left += a - b;
+				else right += b - a;
+			}
+
+			ROW_HEURISTIC[row] = LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+					- MONOTONICITY_WEIGHT * Math.min(left, right) - SUM_WEIGHT * sum;
+		}
+	}
+
+	// Search limits
+	private final int depth;
+	private final long budgetNanos;
+	private final float probabilityCutoff;
+	private final float fourProbability;
+
+	// Size of the table of an instance that was not given one, in megabytes
+	static final int DEFAULT_TABLE_MEGABYTES = 16;
+
+	// Evaluated chance nodes: board, score, and remaining depth it was evaluated with; created on first use if not given
+	private TranspositionTable table;
+	private final boolean sharedTable;
+
+	// State of the search in progress
+	private long nodes, deadline;
+	private boolean aborted;
+
+
+
+	/**
+	 * Creates a player searching 3 moves ahead without a time budget
+	 */
+	public Expectimax() {
+		this(3, 0);
+	}
+
+
+
+	/**
+	 * Creates a player
+	 *
+	 * @param depth number of moves to look ahead (or the deepest level with a time budget)
+	 * @param budgetMillis time budget per move in milliseconds; 0 searches to the full depth every time
+	 */
+	public Expectimax(int depth, long budgetMillis) {
+		this(depth, budgetMillis, 0.0001f, null, Spawner.DEFAULT_FOUR_PROBABILITY);
+	}
+
+
+
+	/**
+	 * Creates a player searching 3 moves ahead without a time budget, sharing the given table
+	 *
+	 * @param table
+	 */
+	public Expectimax(TranspositionTable table) {
+		this(table, Spawner.DEFAULT_FOUR_PROBABILITY);
+	}
+
+
+
+	/**
+	 * Creates a player searching 3 moves ahead without a time budget, for games whose new blocks are 4s with the
+	 * given probability
+	 *
+	 * @param table null for a table of its own
+	 * @param fourProbability
+	 */
+	public Expectimax(TranspositionTable table, double fourProbability) {
+		this(3, 0, 0.0001f, table, fourProbability);
+	}
+
+
+
+	/**
+	 * Creates a player
+	 *
+	 * @param depth number of moves to look ahead (or the deepest level with a time budget)
+	 * @param budgetMillis time budget per move in milliseconds; 0 searches to the full depth every time
+	 * @param probabilityCutoff chance branches less likely than this are scored by the heuristic
+	 * @param table table of evaluated boards, which may be shared with other instances; null for a table of
+	 *        DEFAULT_TABLE_MEGABYTES of its own
+	 * @param fourProbability probability that a new block is a 4
+	 */
+	public Expectimax(int depth, long budgetMillis, float probabilityCutoff, TranspositionTable table, double fourProbability) {
+		if(depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+		this.depth = depth;
+		this.budgetNanos = budgetMillis * 1000000;
+		this.probabilityCutoff = probabilityCutoff;
+		this.fourProbability = (float)fourProbability;
+		this.table = table;
+		this.sharedTable = table != null;
+	}
+
+
+
+	@Override
+	public char nextMove(GameState game) {
+		return bestMove(game.getBoard());
+	}
+
+
+
+	/**
+	 * Finds the direction with the highest expected heuristic score
+	 * Returns 'W' if no direction moves the board
+	 *
+	 * @param board
+	 * @return dir
+	 */
+	public char bestMove(long board) {
+		if(table == null) table = new TranspositionTable(DEFAULT_TABLE_MEGABYTES);
+		if(!sharedTable) table.newSearch();
+
+		long start = System.nanoTime();
+		deadline = start + budgetNanos;
+		nodes = 0;
+		aborted = false;
+
+		char best = 'W';
+
+		// Without a time budget the full depth is searched right away; otherwise one level is added at a time
+		for(int limit = budgetNanos > 0 ? 1 : depth; limit <= depth; limit++) {
+			char dir = searchRoot(board, limit);
+			if(aborted) break;
+			best = dir;
+			if(budgetNanos > 0 && System.nanoTime() > deadline) break;
+		}
+
+		NODES.add(nodes);
+		SEARCH_NANOS.add(System.nanoTime() - start);
+		return best;
+	}
+
+
+
+	/**
+	 * Scores the four shifts of the root board to the given depth
+	 *
+	 * @param board
+	 * @param limit
+	 * @return dir
+	 */
+	private char searchRoot(long board, int limit) {
+		char best = 'W';
+		float bestScore = -1;
+
+		for(char dir : Board.DIRECTIONS) {
+			long shifted = Board.shift(board, dir);
+			if(shifted == board) continue;
+
+			float score = chanceNode(shifted, 1f, limit - 1);
+			if(aborted) return best;
+			if(score > bestScore) {
+				bestScore = score;
+				best = dir;
+			}
+		}
+		return best;
+	}
+
+
+
+	/**
+	 * Max node: the best score over the four shifts; 0 if nothing can move (game over)
+	 *
+	 * @param board
+	 * @param probability
+	 * @param remaining
+	 * @return score
+	 */
+	private float maxNode(long board, float probability, int remaining) {
+		nodes++;
+		float best = 0;
+		for(char dir : Board.DIRECTIONS) {
+			long shifted = Board.shift(board, dir);
+			if(shifted != board) best = Math.max(best, chanceNode(shifted, probability, remaining));
+		}
+		return best;
+	}
+
+
+
+	/**
+	 * Chance node: the average score over every possible new block
+	 *
+	 * @param board
+	 * @param probability probability of this node being reached from the root
+	 * @param remaining number of moves left to search
+	 * @return score
+	 */
+	private float chanceNode(long board, float probability, int remaining) {
+		if(remaining == 0 || probability < probabilityCutoff) return heuristic(board);
+
+		// Checking the time budget every few thousand nodes
+		if((++nodes & 0xFFF) == 0 && budgetNanos > 0 && System.nanoTime() > deadline) aborted = true;
+		if(aborted) return 0;
+
+		// Rotations and reflections of a board score the same, so they share one entry
+		long key = Symmetry.canonical(board);
+		float cached = table.probe(key, remaining);
+		if(!Float.isNaN(cached)) return cached;
+
+		long empty = Board.emptyMask(board);
+		int count = Long.bitCount(empty);
+		float share = probability / count, two = 1 - fourProbability;
+		float sum = 0;
+
+		while(empty != 0) {
+			long bit = empty & -empty;
+			empty ^= bit;
+			sum += two * maxNode(board | bit, share * two, remaining - 1);
+			sum += fourProbability * maxNode(board | bit << 1, share * fourProbability, remaining - 1);
+		}
+		float score = sum / count;
+
+		if(!aborted) table.store(key, remaining, score);
+		return score;
+	}
+
+
+
+	/**
+	 * Heuristic score of a board: the sum of the scores of its rows and its columns
+	 *
+	 * @param board
+	 * @return score
+	 */
+	static float heuristic(long board) {
+		return rowsHeuristic(board) + rowsHeuristic(MoveTable.transpose(board));
+	}
+
+	private static float rowsHeuristic(long board) {
+		return ROW_HEURISTIC[(int)(board & 0xFFFF)]
+			+ ROW_HEURISTIC[(int)(board >>> 16 & 0xFFFF)]
+			+ ROW_HEURISTIC[(int)(board >>> 32 & 0xFFFF)]
+			+ ROW_HEURISTIC[(int)(board >>> 48 & 0xFFFF)];
+	}
+
+
+
+	/**
+	 * Returns the number of nodes searched per millisecond of search time so far, over all instances
+	 *
+	 * @return nodes per millisecond
+	 */
+	public static double nodesPerMillisecond() {
+		long nanos = SEARCH_NANOS.sum();
+		return nanos == 0 ? 0 : NODES.sum() / (nanos / 1e6);
+	}
+
+
+
+	@Override
+	public String report() {
+		return String.format("Expectimax: %d nodes searched, %.0f nodes/ms per thread", NODES.sum(), nodesPerMillisecond())
+				+ (table == null ? "" : "; " + table.report());
+	}
+}
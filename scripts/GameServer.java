@@ -0,0 +1,485 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * GameServer class
+ *
+ * Headless server for playing the game over TCP, next to the Swing game (Main). Every connection is a session
+ * with its own GameState and is handled by its own thread, a virtual thread when the JVM has them (Java 21 and
+ * later; see perConnectionExecutor), so thousands of mostly idle sessions cost little more than their games.
+ *
+ * The protocol is line based, so it can be tried with any line-based client (e.g. nc localhost 2048).
+ * Client to server: one command per character, several may be sent on one line:
+ * 	W, A, S, D (I, O on the cube)	shift
+ * 	R								new game
+ * 	Q								quit
+ * 	C <id>							(a whole line) continue the game of an earlier session
+ * 	V <watch>						(a whole line) watch the game of a session that is being played
+ * Server to client, one line per command:
+ * 	G <size> <depth> <id> <watch>	once, after connecting; id is the session's game, for continuing it later, and
+ * 									watch is a separate token that only lets others watch the session
+ * 	B <score> <max> <exponents>		the whole board, after connecting and after R; one hex digit per slot
+ * 	M <score> <max> <slot>:<exp>...	after a valid move: the slots that changed and their new exponents (hex)
+ * 	N								the move did not change the board
+ * 	X <score> <max>					after M or N, if no moves are left
+ * 	E <reason>						error; after "busy" and "idle" the server closes the connection
+ *
+ * A session that ends without Q, e.g. because the connection broke or was idle, parks its game in a SessionStore
+ * off the heap, where it is kept for keepSeconds; a new connection gets it back with "C <id>" and its own id
+ * becomes that one. Continuing a game takes it out of the store, so no two connections play the same game; it is
+ * parked again when the new session ends, and a game that "C" replaces is parked under its own id.
+ *
+ * After "V <watch>" the connection becomes a spectator of that session (see Broadcast): it is sent the whole board
+ * and from then on an "M" line whenever moves were made, all moves since the last line coalesced into one, until
+ * the session ends with "E gone". Spectators are woken every WATCH_MILLIS and write on their own threads, so a
+ * slow spectator only falls behind (and gets a "B" line with the whole board) without holding up the player.
+ *
+ * Backpressure: replies are written into a buffer that is only flushed once the session has handled every
+ * command that already arrived, and a client that does not read its replies fills the socket buffers until
+ * its session blocks on writing, which stops it from reading more commands. Sessions beyond maxSessions are
+ * refused with "E busy", and sessions that send nothing for idleMillis are closed with "E idle".
+ *
+ * Usage:
+ * 		java scripts.GameServer [-port P] [-size N | -cube] [-idle SECONDS] [-max SESSIONS] [-keep SECONDS]
+ *
+ * @author Kevin1031
+ */
+public class GameServer {
+
+	// Longest command line accepted
+	private static final int MAX_LINE = 4096;
+
+	// Time between two updates sent to a spectator, in milliseconds
+	static final int WATCH_MILLIS = 50;
+
+	private final Rules rules;
+	private final int maxSessions, idleMillis, keepSeconds;
+
+	// Games of sessions that ended without quitting
+	private final SessionStore parked;
+
+	// Moves of the sessions being played, by watch token, for spectators
+	private final ConcurrentHashMap<Long, Broadcast> live = new ConcurrentHashMap<>();
+
+	private final AtomicInteger sessions = new AtomicInteger(), watching = new AtomicInteger();
+	private final LongAdder moves = new LongAdder(), moveNanos = new LongAdder(), refused = new LongAdder(), evicted = new LongAdder(), resumed = new LongAdder();
+
+
+
+	/**
+	 * Creates a server
+	 *
+	 * @param rules rules of every session's game
+	 * @param maxSessions number of sessions served at once
+	 * @param idleMillis sessions are closed after this long without a command
+	 * @param keepSeconds parked games are removed after this long (see expire())
+	 */
+	public GameServer(Rules rules, int maxSessions, int idleMillis, int keepSeconds) {
+		this.rules = rules;
+		this.maxSessions = maxSessions;
+		this.idleMillis = idleMillis;
+		this.keepSeconds = keepSeconds;
+		this.parked = new SessionStore(rules);
+	}
+
+
+
+	/**
+	 * Main Method
+	 * Parses the arguments and serves until the program is stopped, printing statistics and removing expired
+	 * parked games every 10 seconds
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int port = 2048, idleSeconds = 300, maxSessions = 20000, keepSeconds = 86400;
+		Rules rules = Rules.CLASSIC;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				switch(args[i]) {
+				case "-port": port = Integer.parseInt(args[++i]); break;
+				case "-size": rules = Rules.of(Integer.parseInt(args[++i])); break;
+				case "-cube": rules = Rules.CUBE; break;
+				case "-idle": idleSeconds = Integer.parseInt(args[++i]); break;
+				case "-max": maxSessions = Integer.parseInt(args[++i]); break;
+				case "-keep": keepSeconds = Integer.parseInt(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+				}
+			}
+
+			GameServer server = new GameServer(rules, maxSessions, idleSeconds * 1000, keepSeconds);
+			ServerSocket socket = new ServerSocket(port, 4096);
+			Log.info("Serving " + rules.size() + "x" + rules.size() + (rules.depth() > 1 ? "x" + rules.depth() : "") + " games on port " + port + " (" + threadKind() + " threads)");
+
+			Thread reporter = new Thread(() -> {
+				while(true) {
+					try {
+						Thread.sleep(10000);
+					} catch(InterruptedException e) {
+						return;
+					}
+					server.expire();
+					Log.info(server.report());
+				}
+			}, "GameServer report");
+			reporter.setDaemon(true);
+			reporter.start();
+
+			server.serve(socket);
+
+		} catch(IOException | RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java scripts.GameServer [-port P] [-size N | -cube] [-idle SECONDS] [-max SESSIONS] [-keep SECONDS]");
+			System.exit(1);
+		}
+	}
+
+
+
+	/**
+	 * Accepts connections until the socket is closed, handing each one to its own thread
+	 *
+	 * @param socket
+	 * @throws IOException
+	 */
+	public void serve(ServerSocket socket) throws IOException {
+		ExecutorService executor = perConnectionExecutor("GameServer session");
+		try {
+			while(!socket.isClosed()) {
+				Socket connection = socket.accept();
+				executor.execute(() -> session(connection));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+
+	/**
+	 * Plays one session: reads commands and answers them until the client quits, disconnects or is idle too long
+	 *
+	 * @param connection
+	 */
+	void session(Socket connection) {
+		try(Socket socket = connection) {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(idleMillis);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 1024);
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), 1024);
+
+			if(sessions.incrementAndGet() > maxSessions) {
+				sessions.decrementAndGet();
+				refused.increment();
+				out.write("E busy\n");
+				out.flush();
+				return;
+			}
+
+			Session session = new Session(rules);
+			live.put(session.watch, session.broadcast);
+			try {
+				StringBuilder reply = new StringBuilder(256);
+				reply.append("G ").append(rules.size()).append(' ').append(rules.depth()).append(' ').append(session.id).append(' ').append(session.watch).append('\n');
+				session.board(reply);
+				out.append(reply);
+				out.flush();
+
+				while(true) {
+					String line;
+					try {
+						line = in.readLine();
+					} catch(SocketTimeoutException e) {
+						evicted.increment();
+						out.write("E idle\n");
+						out.flush();
+						return;
+					}
+					if(line == null) return;
+					if(line.length() > MAX_LINE) {
+						out.write("E line too long\n");
+						out.flush();
+						return;
+					}
+
+					// Continuing a parked game
+					if(line.length() > 2 && Character.toUpperCase(line.charAt(0)) == 'C' && line.charAt(1) == ' ') {
+						reply.setLength(0);
+						if(session.resume(parked, line.substring(2).trim(), reply)) resumed.increment();
+						out.append(reply);
+						if(!in.ready()) out.flush();
+						continue;
+					}
+
+					// Watching another session instead of playing
+					if(line.length() > 2 && Character.toUpperCase(line.charAt(0)) == 'V' && line.charAt(1) == ' ') {
+						String id = line.substring(2).trim();
+						Broadcast watched = null;
+						try {
+							watched = live.get(Long.parseLong(id));
+						} catch(NumberFormatException e) {
+							// Unknown like any other id
+						}
+						if(watched == null || watched == session.broadcast) {
+							out.write("E unknown id " + id + "\n");
+							out.flush();
+							continue;
+						}
+						session.quit = true;
+						watch(watched, out);
+						return;
+					}
+
+					for(int i = 0; i < line.length(); i++) {
+						char command = Character.toUpperCase(line.charAt(i));
+						reply.setLength(0);
+						if(command == 'Q') {
+							session.quit = true;
+							out.write("Q\n");
+							out.flush();
+							return;
+						}
+
+						long start = System.nanoTime();
+						session.command(command, reply);
+						moveNanos.add(System.nanoTime() - start);
+						moves.increment();
+						out.append(reply);
+					}
+
+					// Replies of commands that arrived together are sent together
+					if(!in.ready()) out.flush();
+				}
+			} finally {
+				live.remove(session.watch, session.broadcast);
+				session.broadcast.close();
+				if(!session.quit) parked.put(session.id, session.game);
+				sessions.decrementAndGet();
+			}
+		} catch(IOException e) {
+			// The client went away; nothing to answer
+		}
+	}
+
+
+
+	/**
+	 * Sends the moves of a session to a spectator until the session ends or the spectator goes away
+	 *
+	 * @param watched
+	 * @param out
+	 * @throws IOException if the spectator went away
+	 */
+	private void watch(Broadcast watched, Writer out) throws IOException {
+		watching.incrementAndGet();
+		try {
+			Broadcast.Frame frame = watched.frame();
+			StringBuilder text = new StringBuilder(256);
+			long cursor = -1;
+			while(true) {
+				// Checked before reading, so that the last moves are still sent
+				boolean closed = watched.isClosed();
+				cursor = watched.read(cursor, frame);
+				if(!frame.isEmpty()) {
+					text.setLength(0);
+					frame.write(text);
+					out.append(text);
+					out.flush();
+				}
+				if(closed) {
+					out.write("E gone\n");
+					out.flush();
+					return;
+				}
+				Thread.sleep(WATCH_MILLIS);
+			}
+		} catch(InterruptedException e) {
+			// The server is shutting down
+		} finally {
+			watching.decrementAndGet();
+		}
+	}
+
+
+
+	/**
+	 * Returns a line of statistics: sessions, commands handled and their average handling time
+	 *
+	 * @return report
+	 */
+	public String report() {
+		long count = moves.sum();
+		return String.format("%d sessions (%d watching), %d commands handled (%.1f us each), %d refused, %d evicted as idle, %d parked (%d continued)",
+				sessions.get() - watching.get(), watching.get(), count, count == 0 ? 0 : moveNanos.sum() / 1e3 / count, refused.sum(), evicted.sum(), parked.size(), resumed.sum());
+	}
+
+
+
+	/**
+	 * Removes the parked games that were not continued for keepSeconds
+	 *
+	 * @return number of games removed
+	 */
+	public int expire() {
+		return parked.evict(keepSeconds);
+	}
+
+	public int getSessions() {
+		return sessions.get();
+	}
+
+
+
+	/**
+	 * Returns an executor that runs every task on a new virtual thread if the JVM has them, and otherwise on a pool
+	 * of platform threads with small stacks
+	 * Virtual threads are looked up by reflection, so the game still compiles and runs on Java 17
+	 *
+	 * @param name name of the platform threads
+	 * @return executor
+	 */
+	static ExecutorService perConnectionExecutor(String name) {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(null, task, name + " " + count.incrementAndGet(), 256 * 1024);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	// Kind of threads perConnectionExecutor uses, for reports
+	static String threadKind() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return "virtual";
+		} catch(NoSuchMethodException e) {
+			return "platform";
+		}
+	}
+
+
+
+	/**
+	 * Session class
+	 *
+	 * The game of one connection, and its broadcast, which holds the exponents the client was last sent, for
+	 * working out what changed
+	 */
+	static class Session {
+
+		private static final SecureRandom IDS = new SecureRandom();
+
+		private final GameState game;
+		private final char[] directions;
+		private final Broadcast broadcast;
+
+		// Id the game is parked under; from a secure generator, so that other clients cannot guess it
+		private long id = IDS.nextLong() >>> 1;
+
+		// Token spectators watch the session with; separate from the id, so watching does not allow continuing the game
+		private final long watch = IDS.nextLong() >>> 1;
+
+		// Indicates that the client quit, so the game is not parked
+		private boolean quit = false;
+
+		Session(Rules rules) {
+			game = new GameState(rules, new Spawner(ThreadLocalRandom.current().nextLong()));
+			directions = rules.directions();
+			broadcast = new Broadcast(rules);
+			game.reset();
+		}
+
+		/**
+		 * Replaces the game with the one parked under the given id and writes the whole board
+		 * The game that is replaced is parked under the session's old id
+		 *
+		 * @param store
+		 * @param id
+		 * @param reply
+		 * @return resumed (false if there is no such game)
+		 */
+		boolean resume(SessionStore store, String id, StringBuilder reply) {
+			long parked;
+			try {
+				parked = Long.parseLong(id);
+			} catch(NumberFormatException e) {
+				reply.append("E bad id ").append(id).append('\n');
+				return false;
+			}
+			GameState replaced = game.copy();
+			if(!store.load(parked, game)) {
+				reply.append("E unknown id ").append(id).append('\n');
+				return false;
+			}
+			store.put(this.id, replaced);
+			this.id = parked;
+			board(reply);
+			return true;
+		}
+
+		/**
+		 * Performs a command and writes its reply line
+		 *
+		 * @param command
+		 * @param reply
+		 */
+		void command(char command, StringBuilder reply) {
+			if(command == 'R') {
+				game.reset();
+				board(reply);
+				return;
+			}
+
+			boolean valid = false;
+			for(char dir : directions) valid |= dir == command;
+			if(!valid) {
+				reply.append("E unknown command ").append(command).append('\n');
+				return;
+			}
+
+			if(game.move(command)) {
+				reply.append("M ").append(game.getScore()).append(' ').append(game.getMax());
+				broadcast.publish(game, reply);
+				reply.append('\n');
+			} else reply.append("N\n");
+
+			if(!game.canMove()) reply.append("X ").append(game.getScore()).append(' ').append(game.getMax()).append('\n');
+		}
+
+		/**
+		 * Writes the whole board; spectators are sent the slots that changed, like after a move
+		 *
+		 * @param reply
+		 */
+		void board(StringBuilder reply) {
+			broadcast.publish(game, null);
+			reply.append("B ").append(game.getScore()).append(' ').append(game.getMax()).append(' ');
+			for(int cell = 0; cell < game.getRules().cells(); cell++) reply.append(Character.forDigit(game.get(cell), 16));
+			reply.append('\n');
+		}
+	}
+}
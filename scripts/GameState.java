@@ -0,0 +1,468 @@
+package scripts;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+
+/**
+ * GameState class
+ *
+ * This class holds everything about a single game: the packed board (see Rules and Board classes), the score
+ * and the largest tile. Unlike Grid and Main it has no static state and no dependency on the GUI, so any number
+ * of games can be played at once, e.g. one per thread, without a window being open.
+ *
+ * The board's shape is given by its Rules; by default it is the classic 4x4 board, which is a single long.
+ * Other shapes are the NxN boards and the 4x4x4 cube (see Rules interface).
+ * New blocks come from the game's own Spawner, so a game created with a seed is reproduced exactly.
+ * A GameState is not synchronized; each instance should only be used by one thread at a time.
+ *
+ * @author Kevin1031
+ */
+public class GameState {
+
+	// Rules of the board's shape
+	private final Rules rules;
+
+	// Packed board, and a second array the next shift is written into before the two are swapped
+	private long[] board, next;
+
+	// Number of valid moves (score) and highest tile value (max)
+	private int score = 0, max = 0;
+
+	// Indicates that no valid moves are left
+	private boolean over = false;
+
+	// Places new random blocks; owned by this game only
+	private final Spawner spawner;
+
+	// Slot index (y*size + x) and value of the block that was spawned last; -1 if none
+	private int lastSpawnCell = -1, lastSpawnValue = 0;
+
+	// Records the games played into a replay file when set (see ReplayRecorder)
+	private ReplayRecorder recorder;
+
+	// Keeps the positions before the last moves for undo and redo when set (see History)
+	private History history;
+
+
+
+	/**
+	 * Creates an empty 4x4 game with a random seed; call reset() to place the first blocks
+	 */
+	public GameState() {
+		this(new Spawner(ThreadLocalRandom.current().nextLong()));
+	}
+
+
+
+	/**
+	 * Creates an empty 4x4 game whose blocks are placed by the given spawner; call reset() to place the first blocks
+	 *
+	 * @param spawner
+	 */
+	public GameState(Spawner spawner) {
+		this(Rules.CLASSIC, spawner);
+	}
+
+
+
+	/**
+	 * Creates an empty game with the given rules; call reset() to place the first blocks
+	 *
+	 * @param rules
+	 * @param spawner
+	 */
+	public GameState(Rules rules, Spawner spawner) {
+		this.rules = rules;
+		this.spawner = spawner;
+		this.board = new long[rules.words()];
+		this.next = new long[rules.words()];
+	}
+
+
+
+	/**
+	 * Creates a 4x4 game starting from the given board, score and largest tile
+	 *
+	 * @param board
+	 * @param score
+	 * @param max
+	 * @param spawner
+	 */
+	public GameState(long board, int score, int max, Spawner spawner) {
+		this(Rules.CLASSIC, spawner);
+		this.board[0] = board;
+		this.score = score;
+		this.max = max;
+		this.over = !Board.canMove(board);
+	}
+
+
+
+	/**
+	 * Resets the game into start layout: empty board with 4 random blocks, zero score
+	 */
+	public void reset() {
+		if(recorder != null) recorder.begin(this);
+		if(history != null) history.clear();
+		Arrays.fill(board, 0);
+		score = 0;
+		over = false;
+		lastSpawnCell = -1;
+		lastSpawnValue = 0;
+
+		// Generating first 4 random blocks
+		for(int i = 0; i < 4; i++) spawn();
+		max = rules.getMax(board);
+	}
+
+
+
+	/**
+	 * Shifts the blocks to one of the rules' directions (W, A, S, D)
+	 * If anything moved, a random block is spawned and the score increases by one
+	 * Otherwise the game is checked for being over
+	 *
+	 * @param dir
+	 * @return moved
+	 */
+	public boolean move(char dir) {
+		if(rules.shift(board, dir, next)) {
+			if(history != null) history.push(this, dir);
+			long[] shifted = next;
+			next = board;
+			board = shifted;
+			spawn();
+			score++;
+			max = rules.getMax(board);
+			if(recorder != null) recorder.move(dir);
+			return true;
+		}
+
+		if(!rules.canMove(board)) {
+			over = true;
+			if(recorder != null) recorder.finish();
+		}
+		return false;
+	}
+
+
+
+	/**
+	 * Same as move(dir), but also writes what happened into events: the blocks that slid or merged and,
+	 * if anything moved, the spawned block last
+	 * The events are cleared first; nothing is added for an invalid move
+	 *
+	 * @param dir
+	 * @param events
+	 * @return moved
+	 */
+	public boolean move(char dir, MoveEvents events) {
+		events.clear();
+		rules.events(board, dir, events);
+
+		boolean moved = move(dir);
+		if(moved && lastSpawnCell >= 0) events.addSpawn(lastSpawnCell, rules.get(board, lastSpawnCell));
+		return moved;
+	}
+
+
+
+	/**
+	 * Takes back the last move (see History class); needs a history to be attached with setHistory
+	 * When recording, the move is taken out of the recording too; a game that was already over stays recorded as it ended
+	 *
+	 * @return undone (false if there is no history or nothing to undo)
+	 */
+	public boolean undo() {
+		if(history == null || !history.undo(this)) return false;
+		if(recorder != null) recorder.undo();
+		return true;
+	}
+
+
+
+	/**
+	 * Plays the last undone move again
+	 *
+	 * @return redone (false if there is no history or nothing to redo)
+	 */
+	public boolean redo() {
+		char dir = history == null ? 0 : history.redo(this);
+		if(dir == 0) return false;
+		if(recorder != null) recorder.move(dir);
+		return true;
+	}
+
+
+
+	/**
+	 * Checks whether shifting into the given direction would move anything, without changing the game
+	 *
+	 * @param dir
+	 * @return moved
+	 */
+	public boolean canShift(char dir) {
+		return rules.shift(board, dir, next);
+	}
+
+
+
+	/**
+	 * Adds a block at a random empty slot
+	 *
+	 * @return spawned (false if the board is full)
+	 */
+	public boolean spawn() {
+		int cell = rules.spawn(board, spawner);
+		if(cell < 0) return false;
+
+		lastSpawnCell = cell;
+		lastSpawnValue = Board.toValue(rules.get(board, cell));
+		return true;
+	}
+
+
+
+	/**
+	 * Checks if any of the directions would change the board
+	 *
+	 * @return canMove
+	 */
+	public boolean canMove() {
+		return rules.canMove(board);
+	}
+
+
+
+	/**
+	 * Indicates whether a move was attempted while no valid moves were left
+	 *
+	 * @return over
+	 */
+	public boolean isOver() {
+		return over;
+	}
+
+
+
+	/**
+	 * Returns a separate copy of this game that can be modified independently
+	 * The copy's spawner starts in the same state, so both games spawn the same blocks after the same moves
+	 *
+	 * @return copy
+	 */
+	public GameState copy() {
+		GameState copy = new GameState(rules, spawner.copy());
+		System.arraycopy(board, 0, copy.board, 0, board.length);
+		copy.score = score;
+		copy.max = max;
+		copy.over = over;
+		copy.lastSpawnCell = lastSpawnCell;
+		copy.lastSpawnValue = lastSpawnValue;
+		return copy;
+	}
+
+
+
+	/**
+	 * Converts the board into the int[x][y] layout used by Grid (-1 indicates "empty")
+	 * The layers of a cube are laid out in a square next to each other, 2 by 2 for the 4x4x4 cube
+	 *
+	 * @param grid array of gridSize() x gridSize()
+	 * @return grid
+	 */
+	public int[][] toGrid(int[][] grid) {
+		for(int cell = 0; cell < rules.cells(); cell++) {
+			int exponent = rules.get(board, cell);
+			grid[gridX(cell)][gridY(cell)] = exponent == 0 ? -1 : 1 << exponent;
+		}
+		return grid;
+	}
+
+
+
+	/**
+	 * Returns the number of slots along each side of the toGrid() layout
+	 *
+	 * @return size
+	 */
+	public int gridSize() {
+		return rules.size() * layersPerSide();
+	}
+
+	/**
+	 * Returns the x coordinate of a slot in the toGrid() layout
+	 *
+	 * @param cell
+	 * @return x
+	 */
+	public int gridX(int cell) {
+		int size = rules.size(), layer = cell / (size * size);
+		return layer % layersPerSide() * size + cell % size;
+	}
+
+	/**
+	 * Returns the y coordinate of a slot in the toGrid() layout
+	 *
+	 * @param cell
+	 * @return y
+	 */
+	public int gridY(int cell) {
+		int size = rules.size(), layer = cell / (size * size);
+		return layer / layersPerSide() * size + cell / size % size;
+	}
+
+	// Number of layers next to each other in the toGrid() layout
+	private int layersPerSide() {
+		return (int)Math.ceil(Math.sqrt(rules.depth()));
+	}
+
+
+
+	/**
+	 * UNUSED (for debugging purposes only)
+	 * Replaces the exponent in one slot without changing the score
+	 *
+	 * @param cell
+	 * @param exponent
+	 */
+	public void set(int cell, int exponent) {
+		rules.set(board, cell, exponent);
+		this.max = rules.getMax(board);
+		this.over = false;
+	}
+
+
+
+	/**
+	 * Replaces the board of a 4x4 game without changing the score
+	 *
+	 * @param board
+	 */
+	public void setBoard(long board) {
+		checkClassic();
+		this.board[0] = board;
+		this.max = Board.getMax(board);
+		this.over = false;
+	}
+
+
+
+	/**
+	 * Copies the board into words, starting at offset, so that it can be put back later with restore()
+	 * Takes rules.words() longs; nothing is allocated, so many boards can be kept in one array
+	 *
+	 * @param words
+	 * @param offset
+	 */
+	public void save(long[] words, int offset) {
+		System.arraycopy(board, 0, words, offset, board.length);
+	}
+
+
+
+	/**
+	 * Replaces the board with one copied by save() and sets the score that went with it
+	 * The spawner is not changed; restore its state separately to get the same blocks as before
+	 *
+	 * @param words
+	 * @param offset
+	 * @param score
+	 */
+	public void restore(long[] words, int offset, int score) {
+		restore(words, offset, score, 0);
+		this.max = rules.getMax(board);
+	}
+
+
+
+	/**
+	 * Same as restore(words, offset, score), with the largest tile already known
+	 *
+	 * @param words
+	 * @param offset
+	 * @param score
+	 * @param max
+	 */
+	public void restore(long[] words, int offset, int score, int max) {
+		System.arraycopy(words, offset, board, 0, board.length);
+		this.score = score;
+		this.max = max;
+		this.over = false;
+		this.lastSpawnCell = -1;
+		this.lastSpawnValue = 0;
+	}
+
+
+
+	/**
+	 * Returns the packed board of a 4x4 game (see Board class)
+	 * Players that search on packed longs, such as Expectimax, only support the 4x4 board
+	 *
+	 * @return board
+	 */
+	public long getBoard() {
+		checkClassic();
+		return board[0];
+	}
+
+	private void checkClassic() {
+		if(rules != Rules.CLASSIC) throw new UnsupportedOperationException("Only a 4x4 board is a single long; this board is " + rules.size() + "x" + rules.size());
+	}
+
+
+
+	/**
+	 * Returns the exponent in the given slot (0 if empty)
+	 *
+	 * @param cell
+	 * @return exponent
+	 */
+	public int get(int cell) {
+		return rules.get(board, cell);
+	}
+
+	public Rules getRules() {
+		return rules;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public Spawner getSpawner() {
+		return spawner;
+	}
+
+	public int getLastSpawnCell() {
+		return lastSpawnCell;
+	}
+
+	public int getLastSpawnValue() {
+		return lastSpawnValue;
+	}
+
+	public ReplayRecorder getRecorder() {
+		return recorder;
+	}
+
+	// Records every game started by reset() from now on; copies of this game are not recorded
+	public void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public History getHistory() {
+		return history;
+	}
+
+	// Keeps every valid move from now on in the given history, for undo() and redo(); copies of this game have none
+	public void setHistory(History history) {
+		this.history = history;
+	}
+}
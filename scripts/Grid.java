@@ -1,22 +1,27 @@
 package scripts;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 
 
 /**
  * Grid class
  * 
- * This class is manages and performs calculations regarding the game board (Grid) and its objects (Blocks).
- * Functions include creating new random blocks, calculating new positions when blocks are shifted, and
- * queuing new data to be executed in the next animation.
+ * This class connects the game (Main.game, a GameState) with the GUI.
+ * It keeps an int[][] copy of the board for PanelComponents to draw, and the events of the last move
+ * (which blocks slid or merged where) for the next animation. The game rules themselves are performed
+ * by GameState.
  * 
  * @author Kevin1031
  */
 public class Grid {
 	
-	// 2D integer array representing the 4x4 game board; each slot value represents the block's number 
+	// Number of slots along each side of the displayed board, and of one of its layers; both 4 unless changed by resize()
+	// They only differ for the cube, whose layers are displayed next to each other (see GameState.toGrid)
+	static int size = 4, layerSize = 4;
+	
+	// 2D integer array representing the size x size game board; each slot value represents the block's number
+	// This is a copy of Main.game's board for display purposes and is refreshed after every change
 	static int[][] grid = new int[][] {
 		{-1,-1,-1,-1},
 		{-1,-1,-1,-1},
@@ -30,8 +35,8 @@ public class Grid {
 		{-1,-1,-1,-1},
 		{-1,-1,-1,-1}};
 	
-	// Stores positions of dynamic blocks that will be moved during next animation
-	static List<Integer[]> motionList = new ArrayList<Integer[]>();
+	// Slides, merges and the new block of the last move, for the next animation (see MoveEvents class)
+	static final MoveEvents events = new MoveEvents();
 	
 	// Stores the position of new block that will randomly appear; this variable is for the sake of animation only
 	static int[] newBlock = new int[3];
@@ -39,22 +44,27 @@ public class Grid {
 	
 	
 	/**
-	 * Resets the entire grid into start layout
+	 * Fits the grid to the shape of Main.game's board; must be called before the window is opened
 	 */
-	static void refresh() {
-		
-		// Emptying all slots (-1 indicates "empty")
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 0; y <= 3; y++) {
-				grid[x][y] = -1;
-			}
+	static void resize() {
+		size = Main.game.gridSize();
+		layerSize = Main.game.getRules().size();
+		grid = new int[size][size];
+		staticGrid = new int[size][size];
+		for(int x = 0; x < size; x++) {
+			Arrays.fill(grid[x], -1);
+			Arrays.fill(staticGrid[x], -1);
 		}
-		
-		// Generating first 4 random blocks
-		addRandomBlock();
-		addRandomBlock();
-		addRandomBlock();
-		addRandomBlock();
+	}
+	
+	
+	
+	/**
+	 * Resets the entire grid into start layout
+	 */
+	static synchronized void refresh() {
+		Main.game.reset();
+		Main.game.toGrid(grid);
 	}
 	
 	
@@ -68,6 +78,8 @@ public class Grid {
 	 * @param value
 	 */
 	static void addBlock(int x, int y, int value) {
+		int layer = y/layerSize * (size/layerSize) + x/layerSize;
+		Main.game.set((layer*layerSize + y%layerSize)*layerSize + x%layerSize, Board.toExponent(value));
 		grid[x][y] = value;
 	}
 	
@@ -75,387 +87,117 @@ public class Grid {
 	
 	/**
 	 * Adds a block at random empty slot
-	 * 80% - block has a value of 2
-	 * 20% - block has a value of 4
+	 * 75% - block has a value of 2
+	 * 25% - block has a value of 4
 	 */
 	static void addRandomBlock() {
+		if(!Main.game.spawn()) return;
 		
-		// Temporary list for containing empty positions
-		List<Integer[]> emptyList = new ArrayList<Integer[]>();
-		
-		// Searching all empty positions and storing them in emptyList
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 0; y <= 3; y++) {
-				if(grid[x][y] == -1) {
-					
-					// Randomizing the block value (2 or 4; 0.8:0.2)
-					int r = (int)(Math.random()*4);
-					if(r < 3) emptyList.add(new Integer[] {x, y, 2});
-					else emptyList.add(new Integer[] {x, y, 4});
-				}
-			}
-		}
-		
-		// Randomly selecting one empty slot and placing a block into it
-		Integer[] block = emptyList.get((int)(Math.random()*emptyList.size()));
-		grid[block[0]][block[1]] = block[2];
-		spawnBlock(block[0],block[1],block[2]);
+		Main.game.toGrid(grid);
+		int cell = Main.game.getLastSpawnCell();
+		spawnBlock(Main.game.gridX(cell), Main.game.gridY(cell), Main.game.getLastSpawnValue());
 	}
 
 	
 	
 	/**
-	 * Shifts the blocks to one of the four directions (up, down, left, right)
+	 * Shifts the blocks to one of the directions (up, down, left, right; in and out on the cube)
 	 * W = up
 	 * S = down
 	 * D = right
 	 * A = left
+	 * I = in
+	 * O = out
 	 * 
-	 * Also deals with merging blocks of same values
-	 * When a block was merged once during a shift, it cannot merge again until the next shift
-	 * Such "merged blocks" are marked by temporarily converting its value into a negative; negative value blocks are merge-proof
+	 * The move itself is performed by Main.game, which also writes every slide, merge and the new block into
+	 * events for the next animation; grid is then refreshed from its board
 	 * 
 	 * @param dir
 	 */
 	static void shift(char dir) {
-		boolean moved = false;
-		String log = "";
-		
-		// First copying data from grid into staticGrid
-		// When moving blocks are found, its coordinates will be erased (set as -1) in staticGrid
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 0; y <= 3; y++) {
-				staticGrid[x][y] = grid[x][y];
-			}
-		}
-		
-		switch(dir) {
-		
-		// UP
-		case 'W':
-			
-			log += "Input received: 'W'. ";
-			for(int x = 0; x <= 3; x++) {
-				
-				// Recheck indicates that the entire column must be checked again since one movement
-				// may allow for new movement possibilities
-				boolean recheck = true;
-				while(recheck) {
-					recheck = false;
-					
-					// Inner loop: checks individual blocks in the column
-					for(int y = 1; y <= 3; y++) {
-						int value = grid[x][y], next = grid[x][y-1];
-						if(value == -1) continue;
-						
-						// Checks if there is an empty slot above; shifts if true
-						if(next == -1) {
-							grid[x][y] = -1;
-							grid[x][y-1] = value;
-							moveBlock(dir,x,y,x,y-1,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-							
-						// Checks if there is an identical block above; merges if true
-						} else if(next == value && value > 0) {
-							grid[x][y] = -1;
-							grid[x][y-1] = -(value+next);
-							moveBlock(dir,x,y,x,y-1,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-						}
-					}
+		// Grid is locked while the board and the events change, so that they are never drawn half-updated
+		boolean moved;
+		synchronized(Grid.class) {
+			
+			// Performing the move and recording its events
+			moved = Main.game.move(dir, events);
+			
+			// First copying data from grid into staticGrid
+			// Blocks that move during the animation are erased (set as -1) in staticGrid
+			for(int x = 0; x < size; x++) {
+				for(int y = 0; y < size; y++) {
+					staticGrid[x][y] = grid[x][y];
 				}
 			}
-			
-			break;
-			
-		// DOWN
-		case 'S':
-			
-			log += "Input received: 'S'. ";
-			for(int x = 0; x <= 3; x++) {
-				
-				// Recheck indicates that the entire column must be checked again since one movement
-				// may allow for new movement possibilities
-				boolean recheck = true;
-				while(recheck) {
-					recheck = false;
-					
-					// Inner loop: checks individual blocks in the column
-					for(int y = 2; y >= 0; y--) {
-						int value = grid[x][y], next = grid[x][y+1];
-						if(value == -1) continue;
-						
-						// Checks if there is an empty slot below; shifts if true
-						if(next == -1) {
-							grid[x][y] = -1;
-							grid[x][y+1] = value;
-							moveBlock(dir,x,y,x,y+1,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-							
-						// Checks if there is an identical block below; merges if true
-						} else if(next == value && value > 0) {
-							grid[x][y] = -1;
-							grid[x][y+1] = -(value+next);
-							moveBlock(dir,x,y,x,y+1,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-						}
-					}
-				}
-			}
-			
-			break;
-			
-		// RIGHT
-		case 'D':
-			
-			log += "Input received: 'D'. ";
-			for(int y = 0; y <= 3; y++) {
-				
-				// Recheck indicates that the entire row must be checked again since one movement
-				// may allow for new movement possibilities
-				boolean recheck = true;
-				while(recheck) {
-					recheck = false;
-					
-					// Inner loop: checks individual blocks in the row
-					for(int x = 2; x >= 0; x--) {
-						int value = grid[x][y], next = grid[x+1][y];
-						if(value == -1) continue;
-						
-						// Checks if there is an empty slot on the right; shifts if true
-						if(next == -1) {
-							grid[x][y] = -1;
-							grid[x+1][y] = value;
-							moveBlock(dir,x,y,x+1,y,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-							
-						// Checks if there is an identical block on the right; merges if true
-						} else if(next == value && value > 0) {
-							grid[x][y] = -1;
-							grid[x+1][y] = -(value+next);
-							moveBlock(dir,x,y,x+1,y,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-						}
-					}
-				}
+			for(int i = 0; i < events.size(); i++) {
+				if(!events.isSpawned(i)) staticGrid[Main.game.gridX(events.from(i))][Main.game.gridY(events.from(i))] = -1;
 			}
 			
-			break;
-			
-		// LEFT
-		case 'A':
-			
-			log += "Input received: 'A'. ";
-			for(int y = 0; y <= 3; y++) {
-				
-				// Recheck indicates that the entire row must be checked again since one movement
-				// may allow for new movement possibilities
-				boolean recheck = true;
-				while(recheck) {
-					recheck = false;
-					
-					// Inner loop: checks individual blocks in the row
-					for(int x = 1; x <= 3; x++) {
-						int value = grid[x][y], next = grid[x-1][y];
-						if(value == -1) continue;
-						
-						// Checks if there is an empty slot on the left; shifts if true
-						if(next == -1) {
-							grid[x][y] = -1;
-							grid[x-1][y] = value;
-							moveBlock(dir,x,y,x-1,y,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-							
-						// Checks if there is an identical block on the left; merges if true
-						} else if(next == value && value > 0) {
-							grid[x][y] = -1;
-							grid[x-1][y] = -(value+next);
-							moveBlock(dir,x,y,x-1,y,value);
-							staticGrid[x][y] = -1;
-							moved = recheck = true;
-						}
-					}
-				}
+			// grid is replaced by the resulting board
+			Main.game.toGrid(grid);
+			if(moved) {
+				int cell = Main.game.getLastSpawnCell();
+				spawnBlock(Main.game.gridX(cell), Main.game.gridY(cell), Main.game.getLastSpawnValue());
 			}
-			
-			break;
 		}
 		
-		// Restoring negative value "merged blocks" back with their positive values
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 0; y <= 3; y++) {
-				if(grid[x][y] < -1) {
-					grid[x][y] *= -1;
-				}
-			}
-		}
+		// Logging the move; the message is put together by the log writer (see Log class)
+		Log.move(dir, moved, Main.game.getMax(), Main.game.getScore());
 		
-		// Checking if valid move occurred; if so, perform actions below:
-		if(moved) {
-			addRandomBlock();
-			Main.score++;
-			Main.max = getMax();
-			log += "Valid move. Current max: " + Main.max + ". Total move count (score): " + Main.score;
-			
-		// If no valid moves occurred:
-		} else {
-			log += "Invalid move.";
-			
-			// If nothing can be moved anymore -> game over
-			if(!canMove()) Main.over();
-		}
-		
-		// Print log
-		Main.printLog(log);
+		// If nothing can be moved anymore -> game over
+		if(!moved && Main.game.isOver()) Main.over();
 	}
 	
 	
 	
 	/**
-	 * Searches and returns the block with the highest value in the current Grid
+	 * Takes back the last move of Main.game (Z), or plays it again (Y) after it was taken back (see History class)
+	 * The resulting board is shown without animation
 	 * 
-	 * @return max
+	 * @param redo
 	 */
-	static int getMax() {
-		int max = 0;
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 0; y <= 3; y++) {
-				if(grid[x][y] > max) {
-					max = grid[x][y];
-				}
-			}
+	static void undo(boolean redo) {
+		boolean changed;
+		synchronized(Grid.class) {
+			changed = redo ? Main.game.redo() : Main.game.undo();
 		}
-		return max;
+		if(changed) show();
+		Main.printLog("Input received: '" + (redo ? 'Y' : 'Z') + "'. " + (changed ? (redo ? "Move redone." : "Move undone.") : "Nothing to " + (redo ? "redo." : "undo.")));
 	}
 	
 	
 	
 	/**
-	 * Quickly attempts all four possible moves and checks if any valid moves are possible in the 
-	 * 
-	 * @return canMove
+	 * Displays Main.game's board as it is, without animating how it got there
+	 * Used when the board jumps by more than one move, e.g. by seeking in a replay
 	 */
-	static boolean canMove() {
-			
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 1; y <= 3; y++) {
-				int value = grid[x][y], next = grid[x][y-1];
-				if(value == -1) continue;
-				
-				if(next == -1 || next == value && value > 0) return true;
-			}
-		}
-		
-		for(int x = 0; x <= 3; x++) {
-			for(int y = 2; y >= 0; y--) {
-				int value = grid[x][y], next = grid[x][y+1];
-				if(value == -1) continue;
-				
-				if(next == -1 || next == value && value > 0) return true;
-			}
-		}
-		
-		for(int y = 0; y <= 3; y++) {
-			for(int x = 2; x >= 0; x--) {
-				int value = grid[x][y], next = grid[x+1][y];
-				if(value == -1) continue;
-				
-				if(next == -1 || next == value && value > 0) return true;
-			}
-		}
-		
-		for(int y = 0; y <= 3; y++) {
-			for(int x = 1; x <= 3; x++) {
-				int value = grid[x][y], next = grid[x-1][y];
-				if(value == -1) continue;
-				
-				if(next == -1 || next == value && value > 0) return true;
-			}
+	static void show() {
+		synchronized(Grid.class) {
+			events.clear();
+			Main.game.toGrid(grid);
 		}
-		
-		return false;
 	}
 	
 	
 	
 	/**
-	 * Manages storing new data queue for block moving animations
-	 * If there are multiple queue requests that are "chained", such as:
-	 * 		(1) 1 -> 2
-	 * 		(2) 2 -> 3
-	 * 		(3) 4 -> 5
-	 * the two requests are combined into:
-	 * 		(1+2+3) 1 -> 5
-	 * instead of adding a new animation queue
+	 * Searches and returns the block with the highest value in the current Grid
 	 * 
-	 * @param dir
-	 * @param x1
-	 * @param y1
-	 * @param x2
-	 * @param y2
-	 * @param value
+	 * @return max
 	 */
-	static void moveBlock(char dir, int x1, int y1, int x2, int y2, int value) {
-		boolean continued = false;
-		
-		// Attempting to find a "chained" queue with the newly requested queue
-		// If found, only the data of the "chained" queue is modified; new queue is not made
-		switch(dir) {
-		
-		// UP
-		case 'W':
-			for(int i = 0; i < motionList.size(); i++) {
-				if(motionList.get(i)[0] == x1 && motionList.get(i)[1] > y1) {
-					motionList.get(i)[2] = x2;
-					motionList.get(i)[3] = y2;
-					continued = true;
-				}
-			}
-			break;
-			
-		// DOWN
-		case 'S':
-			for(int i = 0; i < motionList.size(); i++) {
-				if(motionList.get(i)[0] == x1 && motionList.get(i)[1] < y1) {
-					motionList.get(i)[2] = x2;
-					motionList.get(i)[3] = y2;
-					continued = true;
-				}
-			}
-			break;
-			
-		// RIGHT
-		case 'D':
-			for(int i = 0; i < motionList.size(); i++) {
-				if(motionList.get(i)[0] < x1 && motionList.get(i)[1] == y1) {
-					motionList.get(i)[2] = x2;
-					motionList.get(i)[3] = y2;
-					continued = true;
-				}
-			}
-			break;
-			
-		// LEFT
-		case 'A':
-			for(int i = 0; i < motionList.size(); i++) {
-				if(motionList.get(i)[0] > x1 && motionList.get(i)[1] == y1) {
-					motionList.get(i)[2] = x2;
-					motionList.get(i)[3] = y2;
-					continued = true;
-				}
-			}
-			break;
-		}
-		
-		// If the new queue is not "chained" with any other queues, it becomes a new queue
-		if(!continued) motionList.add(new Integer[] {x1,y1,x2,y2,value});
+	static int getMax() {
+		return Main.game.getMax();
+	}
+	
+	
+	
+	/**
+	 * Quickly attempts all four possible moves and checks if any valid moves are possible in the 
+	 * 
+	 * @return canMove
+	 */
+	static boolean canMove() {
+		return Main.game.canMove();
 	}
 	
 	
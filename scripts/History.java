@@ -0,0 +1,152 @@
+package scripts;
+
+
+
+/**
+ * History class
+ *
+ * Undo and redo for a GameState. The positions before the last moves are kept in a ring buffer of fixed capacity:
+ * the board's words (see GameState.save), score, largest tile, spawner state and the direction that was played.
+ * Undoing or redoing copies one position, whatever the length of the game; once the buffer is full, the oldest
+ * position is overwritten, so the memory used never grows.
+ * The spawner state is part of a position, so a move that is undone and played again spawns the same block.
+ *
+ * A history is attached to a game with GameState.setHistory, after which every valid move is pushed
+ * automatically. Players and analysis tools can use one the same way for cheap backtracking: attach a history
+ * to a copy of the game, make moves on it and undo them again, instead of copying the game for every branch.
+ *
+ * @author Kevin1031
+ */
+public class History {
+
+	private final int capacity, words;
+
+	// One position per slot; slot of position t is t % capacity
+	private final long[] boards, states;
+	private final int[] scores, maxes;
+	private final char[] directions;
+
+	// Position of the game's present state; the undoable positions come before it, the redoable ones after it
+	// The present position is only stored once something has been undone (redo needs it)
+	private long present = 0;
+	private int undoable = 0, redoable = 0;
+
+
+
+	/**
+	 * Creates an empty history
+	 *
+	 * @param rules rules of the games it is used with
+	 * @param capacity number of positions kept; at most capacity - 1 moves can be undone
+	 */
+	public History(Rules rules, int capacity) {
+		if(capacity < 2) throw new IllegalArgumentException("History capacity must be at least 2: " + capacity);
+		this.capacity = capacity;
+		this.words = rules.words();
+		boards = new long[capacity * words];
+		states = new long[capacity];
+		scores = new int[capacity];
+		maxes = new int[capacity];
+		directions = new char[capacity];
+	}
+
+
+
+	/**
+	 * Stores the game's position before a move; anything that was undone can no longer be redone
+	 * Called by GameState.move before the board changes
+	 *
+	 * @param game
+	 * @param dir the move about to be played
+	 */
+	public void push(GameState game, char dir) {
+		store(game, present, dir);
+		present++;
+		undoable = Math.min(undoable + 1, capacity - 1);
+		redoable = 0;
+	}
+
+
+
+	/**
+	 * Puts the game back into the position before the last move
+	 *
+	 * @param game
+	 * @return undone (false if there is nothing to undo)
+	 */
+	public boolean undo(GameState game) {
+		if(undoable == 0) return false;
+
+		// Keeping the present position for redo
+		store(game, present, (char)0);
+		present--;
+		undoable--;
+		redoable++;
+		load(game, present);
+		return true;
+	}
+
+
+
+	/**
+	 * Plays the last undone move again by restoring the position after it
+	 *
+	 * @param game
+	 * @return direction of the move, or 0 if there is nothing to redo
+	 */
+	public char redo(GameState game) {
+		if(redoable == 0) return 0;
+
+		char dir = directions[slot(present)];
+		present++;
+		undoable++;
+		redoable--;
+		load(game, present);
+		return dir;
+	}
+
+
+
+	/**
+	 * Forgets all positions, e.g. when a new game starts
+	 */
+	public void clear() {
+		undoable = 0;
+		redoable = 0;
+	}
+
+	// Number of moves that can be undone
+	public int undoable() {
+		return undoable;
+	}
+
+	// Number of moves that can be redone
+	public int redoable() {
+		return redoable;
+	}
+
+
+
+	private int slot(long position) {
+		return (int)(position % capacity);
+	}
+
+	/**
+	 * Copies the game's position into the slot of the given position
+	 * The direction is only replaced if one is given, so storing the present position again keeps it
+	 */
+	private void store(GameState game, long position, char dir) {
+		int slot = slot(position);
+		game.save(boards, slot * words);
+		states[slot] = game.getSpawner().getState();
+		scores[slot] = game.getScore();
+		maxes[slot] = game.getMax();
+		if(dir != 0) directions[slot] = dir;
+	}
+
+	private void load(GameState game, long position) {
+		int slot = slot(position);
+		game.restore(boards, slot * words, scores[slot], maxes[slot]);
+		game.getSpawner().setState(states[slot]);
+	}
+}
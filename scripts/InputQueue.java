@@ -0,0 +1,125 @@
+package scripts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * InputQueue class
+ *
+ * A bounded, lock-free queue of key inputs from exactly one producer (the event dispatch thread, through
+ * KeyInput) to exactly one consumer (the game loop in Main). Keys are kept in a ring buffer together with the
+ * time they were pressed, so a quick series of keys is played in order instead of overwriting each other,
+ * and the loop can measure how long each key waited.
+ *
+ * The producer only writes tail and the consumer only writes head, so no compare-and-set is needed. Instead of
+ * polling, the consumer parks in await() while the queue is empty, and the producer unparks it after every key.
+ *
+ * @author Kevin1031
+ */
+public class InputQueue {
+
+	private final char[] keys;
+	private final long[] times;
+	private final int mask;
+
+	// Number of keys ever taken (head) and ever added (tail); the slot of a key is its number & mask
+	private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+	// Thread waiting in await(); set by the consumer before it checks for keys
+	private volatile Thread consumer;
+
+	// Time the key returned by the last poll() was pressed; only used by the consumer
+	private long polledAt;
+
+
+
+	/**
+	 * Creates an empty queue
+	 *
+	 * @param capacity rounded up to a power of 2
+	 */
+	public InputQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		keys = new char[size];
+		times = new long[size];
+		mask = size - 1;
+	}
+
+
+
+	/**
+	 * Adds a key and wakes the consumer; must only be called by the producer thread
+	 * A full queue means the loop has stopped taking keys (e.g. the game is closing), so the key is rejected
+	 *
+	 * @param key
+	 * @return added
+	 */
+	public boolean offer(char key) {
+		long t = tail.get();
+		if(t - head.get() == keys.length) return false;
+
+		int slot = (int)t & mask;
+		keys[slot] = key;
+		times[slot] = System.nanoTime();
+
+		// Publishing the key before looking for a parked consumer, so a consumer that is about to park sees it
+		tail.set(t + 1);
+		Thread waiting = consumer;
+		if(waiting != null) LockSupport.unpark(waiting);
+		return true;
+	}
+
+
+
+	/**
+	 * Takes the oldest key; must only be called by the consumer thread
+	 *
+	 * @return key, or 0 if the queue is empty
+	 */
+	public char poll() {
+		long h = head.get();
+		if(h == tail.get()) return 0;
+
+		int slot = (int)h & mask;
+		char key = keys[slot];
+		polledAt = times[slot];
+		head.set(h + 1);
+		return key;
+	}
+
+
+
+	/**
+	 * Waits until a key is available or the timeout has passed; must only be called by the consumer thread
+	 *
+	 * @param timeout 0 waits without a timeout
+	 * @param unit
+	 */
+	public void await(long timeout, TimeUnit unit) {
+		consumer = Thread.currentThread();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		while(isEmpty()) {
+			if(timeout == 0) LockSupport.park(this);
+			else {
+				long left = deadline - System.nanoTime();
+				if(left <= 0) return;
+				LockSupport.parkNanos(this, left);
+			}
+		}
+	}
+
+
+
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	// Time (System.nanoTime) the key returned by the last poll() was pressed
+	public long getPolledAt() {
+		return polledAt;
+	}
+}
@@ -6,22 +6,36 @@ import java.awt.event.KeyListener;
 public class KeyInput extends Main implements KeyListener {
 	
 	/**
-	 * Gets keyboard input and records in Main.keyInput for them to be identified and actions to take place respectively
+	 * Gets keyboard input and adds it to Main.input for them to be identified and actions to take place respectively
 	 */
 	public void keyPressed(KeyEvent e) {		
 		switch(e.getKeyCode()) {
 		case KeyEvent.VK_UP:
-		case KeyEvent.VK_W: Main.keyInput = 'W'; break;
+		case KeyEvent.VK_W: Main.input.offer('W'); break;
 		case KeyEvent.VK_DOWN:
-		case KeyEvent.VK_S: Main.keyInput = 'S'; break;
+		case KeyEvent.VK_S: Main.input.offer('S'); break;
 		case KeyEvent.VK_RIGHT:
-		case KeyEvent.VK_D: Main.keyInput = 'D'; break;
+		case KeyEvent.VK_D: Main.input.offer('D'); break;
 		case KeyEvent.VK_LEFT:
-		case KeyEvent.VK_A: Main.keyInput = 'A'; break;
-		case KeyEvent.VK_Q: Main.keyInput = 'Q'; Main.printLog("Input received: 'Q'."); break;
-		case KeyEvent.VK_R: Main.keyInput = 'R'; Main.printLog("Input received: 'R'.");break;
-		case KeyEvent.VK_ESCAPE: Main.keyInput = 'E'; Main.printLog("Input received: 'ESC'."); break;
+		case KeyEvent.VK_A: Main.input.offer('A'); break;
+		case KeyEvent.VK_PAGE_UP:
+		case KeyEvent.VK_I: Main.input.offer('I'); break;
+		case KeyEvent.VK_PAGE_DOWN:
+		case KeyEvent.VK_O: Main.input.offer('O'); break;
+		case KeyEvent.VK_Z: Main.input.offer('Z'); break;
+		case KeyEvent.VK_Y: Main.input.offer('Y'); break;
+		case KeyEvent.VK_Q: Main.input.offer('Q'); Main.printLog("Input received: 'Q'."); break;
+		case KeyEvent.VK_R: Main.input.offer('R'); Main.printLog("Input received: 'R'.");break;
+		case KeyEvent.VK_ESCAPE: Main.input.offer('E'); Main.printLog("Input received: 'ESC'."); break;
 		}
+		
+		// Keys of the replay viewer (see Main.view)
+		if(Main.viewer == null) return;
+		int code = e.getKeyCode();
+		if(code == KeyEvent.VK_SPACE) Main.input.offer(' ');
+		else if(code == KeyEvent.VK_HOME) Main.input.offer('H');
+		else if(code == KeyEvent.VK_END) Main.input.offer('N');
+		else if(code >= KeyEvent.VK_0 && code <= KeyEvent.VK_9) Main.input.offer((char)('0' + code - KeyEvent.VK_0));
 	}
 	
 	public void keyReleased(KeyEvent e) {}
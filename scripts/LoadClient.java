@@ -0,0 +1,229 @@
+package scripts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+
+/**
+ * LoadClient class
+ *
+ * Load generator for the GameServer: opens many sessions at once, each of which plays random moves as fast as the
+ * server answers them (one command in flight per session) and starts a new game whenever one is over.
+ * Prints the number of connected sessions, the moves per second and the round-trip time of a move (median and
+ * 99th percentile) once per second, and a summary at the end.
+ *
+ * Usage:
+ * 		java scripts.LoadClient [-host H] [-port P] [-sessions N] [-seconds S] [-think MILLIS] [-watchers N]
+ * With -think, every session waits that long between moves, like a human player, which keeps many sessions open
+ * without saturating the server.
+ * With -watchers, that many spectators watch the first session (see Broadcast), to see whether they slow it down;
+ * the lines they receive per second and how many of them were whole boards are printed with the results.
+ *
+ * @author Kevin1031
+ */
+public class LoadClient {
+
+	// Round trips are counted in buckets of 1/4 octave of nanoseconds, up to about 70 seconds
+	private static final int BUCKETS = 4 * 36;
+
+	private static final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private static final AtomicInteger connected = new AtomicInteger(), failed = new AtomicInteger(), watching = new AtomicInteger();
+	private static final AtomicLong watchLines = new AtomicLong(), watchBoards = new AtomicLong();
+
+	// Watch token of the session the spectators watch, once it is connected
+	private static final AtomicReference<String> watched = new AtomicReference<>();
+
+	private static volatile boolean running = true;
+
+
+
+	/**
+	 * Main Method
+	 * Connects the sessions, lets them play for the given time and prints the results
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		String host = "localhost";
+		int port = 2048, sessions = 1000, seconds = 10, think = 0, watchers = 0;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "-host": host = args[++i]; break;
+			case "-port": port = Integer.parseInt(args[++i]); break;
+			case "-sessions": sessions = Integer.parseInt(args[++i]); break;
+			case "-seconds": seconds = Integer.parseInt(args[++i]); break;
+			case "-think": think = Integer.parseInt(args[++i]); break;
+			case "-watchers": watchers = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Usage: java scripts.LoadClient [-host H] [-port P] [-sessions N] [-seconds S] [-think MILLIS] [-watchers N]");
+				System.exit(1);
+			}
+		}
+
+		System.out.println("Opening " + sessions + " sessions to " + host + ":" + port + " (" + GameServer.threadKind() + " threads)");
+		ExecutorService executor = GameServer.perConnectionExecutor("LoadClient session");
+		String h = host;
+		int p = port, t = think;
+		for(int i = 0; i < sessions; i++) executor.execute(() -> play(h, p, t));
+		for(int i = 0; i < watchers; i++) executor.execute(() -> watch(h, p));
+
+		long start = System.nanoTime(), lastMoves = 0;
+		for(int s = 1; s <= seconds; s++) {
+			Thread.sleep(Math.max(0, start + s * 1000000000L - System.nanoTime()) / 1000000);
+			long moves = count();
+			System.out.println(String.format("%3d s: %d sessions, %d moves/s, %s", s, connected.get(), moves - lastMoves, latency())
+					+ (watchers > 0 ? String.format("; %d watching", watching.get()) : ""));
+			lastMoves = moves;
+		}
+		int open = connected.get();
+		running = false;
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d moves in %.1f s (%.0f moves/s) over %d sessions, %d failed to connect; round trip %s",
+				count(), elapsed, count() / elapsed, open, failed.get(), latency()));
+		if(watchers > 0) System.out.println(String.format("%d spectators received %.0f lines/s, %d of them whole boards",
+				watchers, watchLines.get() / elapsed, watchBoards.get()));
+		executor.shutdownNow();
+		System.exit(0);
+	}
+
+
+
+	/**
+	 * Plays one session until the end of the run: sends one random direction at a time and waits for its reply
+	 *
+	 * @param host
+	 * @param port
+	 * @param think milliseconds between moves
+	 */
+	private static void play(String host, int port, int think) {
+		try(Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 512);
+			OutputStream out = socket.getOutputStream();
+
+			// Greeting and first board
+			String greeting = in.readLine();
+			if(greeting == null || !greeting.startsWith("G ")) {
+				failed.incrementAndGet();
+				return;
+			}
+			in.readLine();
+			connected.incrementAndGet();
+			watched.compareAndSet(null, greeting.split(" ")[4]);
+
+			char[] directions = greeting.split(" ")[2].equals("1") ? new char[] {'W', 'A', 'S', 'D'} : new char[] {'W', 'A', 'S', 'D', 'I', 'O'};
+			byte[] command = new byte[2];
+			command[1] = '\n';
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+
+			try {
+				while(running) {
+					command[0] = (byte)directions[random.nextInt(directions.length)];
+					long sent = System.nanoTime();
+					out.write(command);
+
+					String reply = in.readLine();
+					if(reply == null) return;
+					histogram.incrementAndGet(bucket(System.nanoTime() - sent));
+
+					// A finished game is followed by "X"; it is restarted, and the new board read
+					if(!in.ready()) {
+						if(think > 0) Thread.sleep(think);
+						continue;
+					}
+					if(in.readLine().startsWith("X")) {
+						out.write(new byte[] {'R', '\n'});
+						in.readLine();
+					}
+				}
+				out.write(new byte[] {'Q', '\n'});
+			} finally {
+				connected.decrementAndGet();
+			}
+		} catch(IOException e) {
+			if(running) failed.incrementAndGet();
+		} catch(InterruptedException e) {
+			// The run is over
+		}
+	}
+
+
+
+	/**
+	 * Watches the first session until the end of the run, counting the lines received
+	 *
+	 * @param host
+	 * @param port
+	 */
+	private static void watch(String host, int port) {
+		try {
+			while(watched.get() == null) Thread.sleep(10);
+			try(Socket socket = new Socket(host, port)) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 4096);
+				OutputStream out = socket.getOutputStream();
+
+				// Skipping the greeting and board of the spectator's own session
+				in.readLine();
+				in.readLine();
+				out.write(("V " + watched.get() + "\n").getBytes(StandardCharsets.US_ASCII));
+				watching.incrementAndGet();
+				try {
+					for(String line = in.readLine(); running && line != null && !line.startsWith("E"); line = in.readLine()) {
+						watchLines.incrementAndGet();
+						if(line.startsWith("B")) watchBoards.incrementAndGet();
+					}
+				} finally {
+					watching.decrementAndGet();
+				}
+			}
+		} catch(IOException e) {
+			if(running) failed.incrementAndGet();
+		} catch(InterruptedException e) {
+			// The run is over
+		}
+	}
+
+
+
+	// Histogram bucket of a round trip
+	private static int bucket(long nanos) {
+		if(nanos < 1) return 0;
+		return Math.min(BUCKETS - 1, (int)(Math.log(nanos) / Math.log(2) * 4));
+	}
+
+	// Number of moves answered so far
+	private static long count() {
+		long count = 0;
+		for(int i = 0; i < BUCKETS; i++) count += histogram.get(i);
+		return count;
+	}
+
+	/**
+	 * Returns the median and 99th percentile of all round trips so far, from the upper bounds of their buckets
+	 *
+	 * @return latency
+	 */
+	private static String latency() {
+		long count = count(), seen = 0;
+		double p50 = 0, p99 = 0;
+		for(int i = 0; i < BUCKETS && count > 0; i++) {
+			seen += histogram.get(i);
+			double bound = Math.pow(2, (i + 1) / 4.0) / 1e6;
+			if(p50 == 0 && seen >= count * 0.5) p50 = bound;
+			if(p99 == 0 && seen >= count * 0.99) p99 = bound;
+		}
+		return String.format("p50 %.3f ms, p99 %.3f ms", p50, p99);
+	}
+}
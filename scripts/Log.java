@@ -0,0 +1,345 @@
+package scripts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * Log class
+ *
+ * Asynchronous logging for the game. Callers never format or write anything themselves: a log call only copies
+ * its fields into a preallocated ring buffer of records, and a background thread ("Log writer") takes the records
+ * out in batches, formats them and hands each batch to the sinks (console, rotating file) with a single write.
+ * Moves are logged as structured records (direction, result, max, score) so that logging a move allocates nothing.
+ *
+ * Any thread may log. Producers claim a slot by compare-and-set on the tail and publish it through the slot's
+ * sequence number, so the writer only reads slots that are completely written. When the buffer is full, records are
+ * dropped and counted rather than making the game wait for the console.
+ *
+ * Records below the current level are discarded before touching the buffer; at Level.OFF a log call is only
+ * a field read and a comparison, and the writer thread is never started.
+ *
+ * @author Kevin1031
+ */
+public class Log {
+
+	/**
+	 * Level class
+	 *
+	 * Importance of a record; records below Log.level are discarded. OFF turns logging off entirely.
+	 */
+	public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+	/**
+	 * Sink class
+	 *
+	 * Destination of formatted records. write is only called by the writer thread, with one batch of complete lines.
+	 */
+	public interface Sink {
+		void write(String batch) throws IOException;
+	}
+
+	// Records below this level are discarded; set before the game starts (the "-log" argument)
+	static volatile Level level = Level.INFO;
+
+	// Records are kept until the writer takes them; a batch is written at least this often
+	private static final int CAPACITY = 4096, MASK = CAPACITY - 1;
+	private static final long FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final byte TEXT = 0, MOVE = 1;
+	private static final Level[] LEVELS = Level.values();
+
+	// Record fields, one slot per record
+	private static final long[] times = new long[CAPACITY];
+	private static final byte[] kinds = new byte[CAPACITY], levels = new byte[CAPACITY];
+	private static final char[] dirs = new char[CAPACITY];
+	private static final boolean[] moved = new boolean[CAPACITY];
+	private static final int[] maxes = new int[CAPACITY], scores = new int[CAPACITY];
+	private static final String[] texts = new String[CAPACITY];
+
+	// Slot i may be written by the producer of record number n when sequences[i] == n, and read when it is n + 1
+	private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private static final AtomicLong tail = new AtomicLong();
+	private static volatile long head = 0;
+
+	private static final LongAdder dropped = new LongAdder();
+	private static final List<Sink> sinks = new CopyOnWriteArrayList<>();
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+	private static volatile Thread writer;
+
+	static {
+		for(int i = 0; i < CAPACITY; i++) sequences.set(i, i);
+		sinks.add(console());
+	}
+
+
+
+	/**
+	 * Logs a text message
+	 *
+	 * @param recordLevel
+	 * @param text
+	 */
+	public static void log(Level recordLevel, String text) {
+		if(recordLevel.ordinal() < level.ordinal()) return;
+		int slot = claim();
+		if(slot < 0) return;
+		kinds[slot] = TEXT;
+		levels[slot] = (byte)recordLevel.ordinal();
+		texts[slot] = text;
+		publish(slot);
+	}
+
+	public static void info(String text) {
+		log(Level.INFO, text);
+	}
+
+
+
+	/**
+	 * Logs a move of the game at level INFO without building its message
+	 *
+	 * @param dir
+	 * @param valid whether the move changed the board
+	 * @param max largest tile after the move
+	 * @param score score after the move
+	 */
+	public static void move(char dir, boolean valid, int max, int score) {
+		if(Level.INFO.ordinal() < level.ordinal()) return;
+		int slot = claim();
+		if(slot < 0) return;
+		kinds[slot] = MOVE;
+		levels[slot] = (byte)Level.INFO.ordinal();
+		dirs[slot] = dir;
+		moved[slot] = valid;
+		maxes[slot] = max;
+		scores[slot] = score;
+		publish(slot);
+	}
+
+
+
+	/**
+	 * Adds a sink; records are written to every sink
+	 *
+	 * @param sink
+	 */
+	public static void addSink(Sink sink) {
+		sinks.add(sink);
+	}
+
+	// Removes all sinks, e.g. to log to a file only
+	public static void clearSinks() {
+		sinks.clear();
+	}
+
+
+
+	/**
+	 * Claims the slot of the next record, starting the writer with the first record
+	 *
+	 * @return slot, or -1 if the buffer is full
+	 */
+	private static int claim() {
+		if(writer == null) start();
+		while(true) {
+			long t = tail.get();
+			int slot = (int)t & MASK;
+			long sequence = sequences.get(slot);
+
+			// The writer has not taken the record that was CAPACITY records earlier yet
+			if(sequence < t) {
+				dropped.increment();
+				return -1;
+			}
+			if(sequence == t && tail.compareAndSet(t, t + 1)) {
+				times[slot] = System.currentTimeMillis();
+				return slot;
+			}
+		}
+	}
+
+
+
+	/**
+	 * Makes a written record visible to the writer, waking it early if the buffer is filling up
+	 *
+	 * @param slot
+	 */
+	private static void publish(int slot) {
+		long t = sequences.get(slot);
+		sequences.set(slot, t + 1);
+		if(t - head > CAPACITY / 2) LockSupport.unpark(writer);
+	}
+
+
+
+	/**
+	 * Starts the writer thread and makes sure the remaining records are written when the program exits
+	 */
+	private static synchronized void start() {
+		if(writer != null) return;
+		Thread thread = new Thread(() -> {
+			while(true) {
+				LockSupport.parkNanos(FLUSH_NANOS);
+				drain();
+			}
+		}, "Log writer");
+		thread.setDaemon(true);
+		thread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::drain));
+		writer = thread;
+	}
+
+
+
+	/**
+	 * Formats all published records and writes them to the sinks as one batch
+	 * Called by the writer thread, and once more by the shutdown hook
+	 */
+	static synchronized void drain() {
+		StringBuilder batch = new StringBuilder();
+		long lastSecond = -1;
+		String stamp = "";
+
+		while(true) {
+			int slot = (int)head & MASK;
+			if(sequences.get(slot) != head + 1) break;
+
+			// Formatting the time once per second of records
+			long second = times[slot] / 1000;
+			if(second != lastSecond) {
+				lastSecond = second;
+				stamp = "[" + FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault())) + "] ";
+			}
+			batch.append(stamp);
+			if(levels[slot] != Level.INFO.ordinal()) batch.append(LEVELS[levels[slot]]).append(": ");
+
+			if(kinds[slot] == MOVE) {
+				batch.append("Input received: '").append(dirs[slot]).append("'. ");
+				if(moved[slot]) batch.append("Valid move. Current max: ").append(maxes[slot]).append(". Total move count (score): ").append(scores[slot]);
+				else batch.append("Invalid move.");
+			} else {
+				batch.append(texts[slot]);
+				texts[slot] = null;
+			}
+			batch.append(System.lineSeparator());
+
+			// Handing the slot back to the producers, for the record CAPACITY records later
+			sequences.set(slot, head + CAPACITY);
+			head++;
+		}
+
+		long lost = dropped.sumThenReset();
+		if(lost > 0) batch.append("Log buffer full: ").append(lost).append(" records dropped.").append(System.lineSeparator());
+		if(batch.length() == 0) return;
+
+		String text = batch.toString();
+		for(Sink sink : sinks) {
+			try {
+				sink.write(text);
+			} catch(IOException e) {
+				System.err.println("Log sink failed: " + e);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Returns a sink writing to System.out
+	 *
+	 * @return sink
+	 */
+	public static Sink console() {
+		PrintStream out = System.out;
+		return batch -> {
+			out.print(batch);
+			out.flush();
+		};
+	}
+
+
+
+	/**
+	 * RotatingFile class
+	 *
+	 * Sink appending to a file. When the file has grown past maxBytes, it is renamed to file.1 (file.1 to file.2
+	 * and so on, keeping the given number of old files) and a new file is started.
+	 */
+	public static class RotatingFile implements Sink {
+
+		private final Path path;
+		private final long maxBytes;
+		private final int keep;
+		private OutputStream out;
+		private long size;
+
+		/**
+		 * Creates a sink for the given file; writing starts at the end of an existing file
+		 *
+		 * @param path
+		 * @param maxBytes
+		 * @param keep number of old files kept
+		 */
+		public RotatingFile(Path path, long maxBytes, int keep) {
+			if(maxBytes < 1) throw new IllegalArgumentException("File size limit must be at least 1: " + maxBytes);
+			this.path = path;
+			this.maxBytes = maxBytes;
+			this.keep = keep;
+		}
+
+		// 1 MB per file, 3 old files
+		public RotatingFile(String path) {
+			this(Paths.get(path), 1 << 20, 3);
+		}
+
+		@Override
+		public void write(String batch) throws IOException {
+			if(out == null) {
+				out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				size = Files.size(path);
+			}
+
+			byte[] bytes = batch.getBytes(StandardCharsets.UTF_8);
+			out.write(bytes);
+			out.flush();
+			size += bytes.length;
+			if(size >= maxBytes) rotate();
+		}
+
+		/**
+		 * Closes the file and shifts the old files by one
+		 */
+		private void rotate() throws IOException {
+			out.close();
+			out = null;
+			for(int i = keep - 1; i >= 1; i--) {
+				Path old = Paths.get(path + "." + i);
+				if(Files.exists(old)) Files.move(old, Paths.get(path + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+			}
+			if(keep > 0) Files.move(path, Paths.get(path + ".1"), StandardCopyOption.REPLACE_EXISTING);
+			else Files.delete(path);
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package scripts;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 
 
@@ -15,63 +17,257 @@ import java.time.format.DateTimeFormatter;
  */
 public class Main extends Window {
 	
-	// Stores keyboard input
-	static char keyInput = 'X';
+	// Keys pressed by the player, waiting to be handled by the game loop (see InputQueue class)
+	static final InputQueue input = new InputQueue(256);
+	
+	// Time the automatic player waits for a key before making its own move, in milliseconds
+	// As long as one animation (animationMillis), so every one of its moves is animated to the end
+	static final int autoPlayerDelay = 100;
+	
+	// Number of moves made by keys, and their total and longest time from key press to the board being moved
+	static long keyMoves = 0, totalLatency = 0, maxLatency = 0;
 	
 	// Indicates that user inputs regarding shifting the tiles are ignored
 	static boolean frozen = false;
 	
-	// Indicates that tiles are shifting; virtual animations will be displayed instead of the tiles themselves
-	static boolean inMotion = false;
+	// The game being displayed; holds the board, number of valid moves (score) and highest tile value (max)
+	static GameState game = new GameState();
+	
+	// Plays the game automatically when set (see MovePolicy); chosen with the "-policy" argument
+	static MovePolicy autoPlayer = null;
+	
+	// Plays the animations (see Animator class); while it is running, virtual animations are displayed instead of the tiles themselves
+	static Animator animator;
+	
+	// Number of moves that can be taken back with Z (see History class)
+	static final int undoLimit = 1000;
 	
-	// Stores number of valid moves (score) and highest tile value (max)
-	static int score = 0, max = 0;
+	// Plays back a recorded game instead of a new one when set; chosen with the "-view" argument
+	static ReplayViewer viewer = null;
 	
-	// Frames for animation; increase maxMotionFrame for smoother but heavier (and slower) animations
-	static int motionFrame = 0, maxMotionFrame = 20;
+	// Target frames per second of the animations (set with the "-fps" argument), and length of one animation in milliseconds
+	static int fps = 60, animationMillis = 100;
 	
 	
 	
 	/**
 	 * Main Method
 	 * Deals with general game events, user inputs, and basic runtime management
+	 * Pass "-policy <name>" to let a MovePolicy play (any name accepted by the Simulator, e.g. ntuple)
+	 * Pass "-size <n>" to play on an n x n board (3 to 8), or "-cube" to play on the 4x4x4 cube
+	 * Pass "-fps <n>" to change the frame rate of the animations (default 60)
+	 * Pass "-log <level>" to change which logs are printed (debug, info, warn, error, or off), and "-logfile <path>" to
+	 * also write them to a file (see Log class)
+	 * Pass "-replay <file>" to record every game into a replay file (see ReplayWriter)
+	 * Pass "-view <file>" to watch a recorded game instead of playing, and "-game <n>" to choose which one (see view())
+	 * 
+	 * The loop sleeps until a key arrives (see InputQueue class) and then handles the keys in the order they were
+	 * pressed; a key pressed during an animation is handled at once and starts the next animation
+	 * Z takes back the last move and Y plays it again (see History class), up to undoLimit moves back
 	 * 
 	 * @param args
-	 * @throws InterruptedException
 	 */
-	public static void main(String[] args) throws InterruptedException {
+	public static void main(String[] args) {
+		String replayFile = null, viewFile = null;
+		int viewGame = 1;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "-policy": autoPlayer = Simulator.policy(args[++i]).get(); break;
+			case "-size": game = new GameState(Rules.of(Integer.parseInt(args[++i])), game.getSpawner()); break;
+			case "-cube": game = new GameState(Rules.CUBE, game.getSpawner()); break;
+			case "-fps": fps = Integer.parseInt(args[++i]); break;
+			case "-log": Log.level = Log.Level.valueOf(args[++i].toUpperCase()); break;
+			case "-logfile": Log.addSink(new Log.RotatingFile(args[++i])); break;
+			case "-replay": replayFile = args[++i]; break;
+			case "-view": viewFile = args[++i]; break;
+			case "-game": viewGame = Integer.parseInt(args[++i]); break;
+			}
+		}
+		if(viewFile != null) openReplay(viewFile, viewGame - 1);
+		else {
+			if(replayFile != null) record(replayFile);
+			game.setHistory(new History(game.getRules(), undoLimit + 1));
+		}
+		Grid.resize();
+		
 		Window.open();
+		animator = new Animator(Window::update, fps, animationMillis);
 		boolean running = true;
 		
-//		 Generating first 4 random blocks
-		Grid.addRandomBlock();
-		Grid.addRandomBlock();
-		Grid.addRandomBlock();
-		Grid.addRandomBlock();
+		if(viewer != null) {
+			Grid.show();
+			Window.update();
+			view();
+			return;
+		}
+		
+		// Generating first 4 random blocks
+		Grid.refresh();
 		Window.update();
 		
 		// Game runtime loop
 		while(running) {
 			
+			// Waiting for user input; the automatic player only waits a short while before moving itself
+			boolean autoPlaying = autoPlayer != null && !frozen;
+			if(input.isEmpty()) input.await(autoPlaying ? autoPlayerDelay : 0, TimeUnit.MILLISECONDS);
+			
+			// Letting the automatic player choose a move if there is no user input
+			char key = input.poll();
+			boolean pressed = key != 0;
+			if(!pressed) {
+				if(!autoPlaying || game.isOver()) continue;
+				
+				// Once no move is left, the player is not asked (it may have no direction to give); any direction ends the game
+				key = game.canMove() ? autoPlayer.nextMove(game) : game.getRules().directions()[0];
+			}
+			
 			// Detecting for user inputs and calling methods respectively
-			if(keyInput != 'X') {
-				switch(keyInput) {
-				case 'Q': if(!PanelComponents.restart) quit(); break;
-				case 'R': if(!PanelComponents.quit) restart(); break;
+			switch(key) {
+			case 'Q': if(!PanelComponents.restart) quit(); break;
+			case 'R': if(!PanelComponents.quit) restart(); break;
+			case 'E': escape(); break;
+			case 'Z':
+			case 'Y':
+				if(frozen) break;
+				animator.stop();
+				Grid.undo(key == 'Y');
+				PanelComponents.end = game.isOver();
+				break;
+			default:
+				if(frozen) break;
+				Grid.shift(key);
+				if(pressed) recordLatency(System.nanoTime() - input.getPolledAt());
+			}
+			
+			// The animation runs on its own; the loop goes straight back to waiting for input
+			if(Grid.events.size() > 0) animator.start();
+			Window.update();
+		}
+	}
+	
+	
+	
+	/**
+	 * Replay viewer loop (see ReplayViewer class), used instead of the game loop with "-view"
+	 * Keys:
+	 * 	- Space: pause and resume
+	 * 	- W (up) and S (down): faster and slower, from 1x to 1000x
+	 * 	- D (right) and A (left): one move forwards and backwards
+	 * 	- Home and End: start and end of the game
+	 * 	- 0 to 9: 0% to 90% of the game
+	 * 
+	 * At up to one move per animation, every move is animated like in the game loop. Faster than that, the board
+	 * jumps straight to the latest move and is only drawn once per frame, however many moves were played in between.
+	 */
+	static void view() {
+		long frameNanos = 1000000000L / fps;
+		while(true) {
+			input.await(frameNanos, TimeUnit.NANOSECONDS);
+			
+			// Keys move the board at once; the position they leave is shown without animation
+			boolean jumped = false;
+			for(char key = input.poll(); key != 0; key = input.poll()) {
+				switch(key) {
+				case 'Q': quit(); break;
 				case 'E': escape(); break;
-				default: if(!frozen) Grid.shift(keyInput);
-				} keyInput = 'X';
-				
-				if(Grid.motionList.size() > 0) animate();
-				Window.update();
+				case ' ': viewer.togglePause(); break;
+				case 'W': viewer.faster(); break;
+				case 'S': viewer.slower(); break;
+				case 'D': viewer.skip(1); jumped = true; break;
+				case 'A': viewer.skip(-1); jumped = true; break;
+				case 'H': viewer.seek(0); jumped = true; break;
+				case 'N': viewer.seek(viewer.getLength()); jumped = true; break;
+				default:
+					if(key < '0' || key > '9') break;
+					viewer.seek(viewer.getLength() * (key - '0') / 10);
+					jumped = true;
+				}
 			}
 			
-			Thread.sleep(50);
+			// Moves due at the current speed; none while a panel is open
+			int due = viewer.due(System.nanoTime());
+			if(frozen) due = 0;
+			
+			boolean animated = viewer.getSpeed() * ReplayViewer.BASE_RATE * animationMillis <= 1000;
+			if(due == 1 && animated && !jumped) {
+				Grid.shift(viewer.next());
+				animator.start();
+			} else if(due > 0 || jumped) {
+				synchronized(Grid.class) {
+					viewer.skip(due);
+				}
+				animator.stop();
+				Grid.show();
+			}
+			Window.update();
 		}
 	}
 	
 	
 	
+	/**
+	 * Opens game number of the given replay file in the viewer; Main.game becomes the viewer's game
+	 * 
+	 * @param file
+	 * @param number from 0
+	 */
+	static void openReplay(String file, int number) {
+		try {
+			ReplayReader reader = new ReplayReader(Paths.get(file));
+			if(number < 0 || number >= reader.count()) throw new IllegalArgumentException("No game " + (number + 1) + " in " + file + ", which has " + reader.count());
+			viewer = new ReplayViewer(reader, number, ReplayViewer.DEFAULT_INTERVAL);
+			game = viewer.getGame();
+		} catch(IOException e) {
+			throw new UncheckedIOException("Could not open replay file " + file, e);
+		}
+	}
+	
+	
+	
+	/**
+	 * Records every game from now on into the given replay file
+	 * The file is completed when the program exits, including the game that is being played
+	 * 
+	 * @param file
+	 */
+	static void record(String file) {
+		try {
+			ReplayWriter replays = new ReplayWriter(Paths.get(file));
+			ReplayRecorder recorder = new ReplayRecorder(replays);
+			game.setRecorder(recorder);
+			
+			// Grid is locked so that the last game is not written while a move is being made
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				synchronized(Grid.class) {
+					recorder.finish();
+				}
+				try {
+					replays.close();
+				} catch(IOException e) {
+					System.err.println("Could not write replays: " + e);
+				}
+			}));
+		} catch(IOException e) {
+			throw new UncheckedIOException("Could not create replay file " + file, e);
+		}
+	}
+	
+	
+	
+	/**
+	 * Adds the time from a key press to its move to the latency statistics
+	 * 
+	 * @param nanos
+	 */
+	static void recordLatency(long nanos) {
+		keyMoves++;
+		totalLatency += nanos;
+		maxLatency = Math.max(maxLatency, nanos);
+	}
+	
+	
+	
 	/**
 	 * Quits and shuts down the program
 	 * Asks for confirmation once
@@ -80,7 +276,10 @@ public class Main extends Window {
 		frozen = true;
 		
 		// Quits game when user confirms this action
-		if(PanelComponents.quit) close();
+		if(PanelComponents.quit) {
+			if(keyMoves > 0) printLog(String.format("Key-to-move latency over %d moves: average %.3f ms, max %.3f ms.", keyMoves, totalLatency / 1e6 / keyMoves, maxLatency / 1e6));
+			close();
+		}
 		
 		// Opens confirmation panel if this action was called for the first time
 		else PanelComponents.quit = true;
@@ -98,8 +297,6 @@ public class Main extends Window {
 		
 		// Restarts game when user confirms this action
 		if(PanelComponents.restart) {
-			Main.max = 0;
-			Main.score = 0;
 			Grid.refresh();
 			escape();
 			
@@ -135,44 +332,11 @@ public class Main extends Window {
 	/**
 	 * Prints the given string as a log to the console
 	 * Includes date and time of print
+	 * The log is written in the background (see Log class), so this returns without waiting for the console
 	 * 
 	 * @param log
 	 */
 	static void printLog(String log) {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");  
-		LocalDateTime now = LocalDateTime.now();
-		System.out.println("[" + dtf.format(now) + "] " + log);
-	}
-	
-	
-	
-	/**
-	 * Animates blocks
-	 * Deals with displaying block moving/spawning animations
-	 * When this method is called, only the virtual blocks are shown; not the actual blocks themselves
-	 */
-	static void animate() {
-		inMotion = true;
-		
-		// Separates animation into "maxMotionFrame" amount of frames
-		for(int i = 1; i < maxMotionFrame; i++) {
-			motionFrame = i;
-			Window.update();
-			
-			// Delay per frame of animation; adjust this value to alter the speed of animation
-			try {
-				Thread.sleep(3);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		
-		// Clearing queued animation data after executing them
-		Grid.motionList.clear();
-		
-		motionFrame = 0;
-		inMotion = false;
+		Log.info(log);
 	}
 }
-
-
@@ -0,0 +1,348 @@
+package scripts;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * MonteCarlo class
+ *
+ * A MovePolicy that tries each of the four shifts and then plays many random games (rollouts) from the result
+ * until no valid moves are left. The direction whose rollouts survive the most moves on average is chosen;
+ * directions that score the same are chosen between at random.
+ *
+ * Rollouts are spread over a ForkJoinPool as tasks that split in half until they are small enough; every task
+ * gets its own Spawner (split off before the task is forked), and results are added up when tasks are joined,
+ * so the threads share no generator and take no locks. Unless it is given a pool, a player called from a
+ * fork-join task (e.g. a game of the Simulator) plays its rollouts in that task's pool, so the pool's number of
+ * threads is all it uses; called from any other thread it uses the common pool.
+ * Either a fixed number of rollouts per direction is played, or rollouts are played until a time budget is
+ * used up ("best move within 20 ms").
+ * The 4x4 board is played on packed longs; every other shape (NxN boards and the cube) is played through its
+ * Rules on long[] boards, with two arrays per task so the rollouts still allocate nothing. Random games on
+ * larger boards last for thousands of moves (about 3,000 on 6x6 and 150,000 on the cube), so those rollouts are
+ * cut off after MAX_ROLLOUT_MOVES. Nearly all of them reach the cutoff, so a rollout that does also scores the
+ * number of empty slots it leaves; otherwise every direction would score the same.
+ *
+ * @author Kevin1031
+ */
+public class MonteCarlo implements MovePolicy {
+
+	// Totals over all instances, for reporting rollouts per second
+	private static final LongAdder ROLLOUTS = new LongAdder(), SEARCH_NANOS = new LongAdder();
+
+	// Tasks with more rollouts than this are split in half
+	private static final int SPLIT_THRESHOLD = 16;
+
+	// Rollouts on boards other than 4x4 stop after this many moves
+	static final int MAX_ROLLOUT_MOVES = 200;
+
+	private final int rollouts;
+	private final long budgetNanos;
+	private final ForkJoinPool pool;
+
+
+
+	/**
+	 * Creates a player with 100 rollouts per direction on the caller's pool
+	 */
+	public MonteCarlo() {
+		this(100, 0, null);
+	}
+
+
+
+	/**
+	 * Creates a player
+	 *
+	 * @param rollouts number of rollouts per direction; with a time budget, the number per task between time checks
+	 * @param budgetMillis time budget per move in milliseconds; 0 plays exactly the given number of rollouts
+	 * @param pool pool the rollouts are played in; null for the pool of the calling fork-join task, or the
+	 *        common pool outside of one
+	 */
+	public MonteCarlo(int rollouts, long budgetMillis, ForkJoinPool pool) {
+		if(rollouts < 1) throw new IllegalArgumentException("Number of rollouts must be at least 1: " + rollouts);
+		this.rollouts = rollouts;
+		this.budgetNanos = budgetMillis * 1000000;
+		this.pool = pool;
+	}
+
+
+
+	@Override
+	public char nextMove(GameState game) {
+		if(game.getRules() != Rules.CLASSIC) return bestMove(game);
+
+		// Seeding from the position keeps a game reproducible when a fixed number of rollouts is played
+		long board = game.getBoard();
+		return bestMove(board, new Spawner(Spawner.mix(board ^ (long)game.getScore() << 32), game.getSpawner().getFourProbability()));
+	}
+
+
+
+	/**
+	 * Finds the direction whose rollouts survive the most moves on average
+	 * Returns 'W' if no direction moves the board
+	 *
+	 * @param board
+	 * @param spawner generator the rollouts' generators are split from
+	 * @return dir
+	 */
+	public char bestMove(long board, Spawner spawner) {
+		long start = System.nanoTime();
+		long deadline = budgetNanos > 0 ? start + budgetNanos : 0;
+
+		// One task per movable direction, each starting from the shifted board
+		Rollouts[] tasks = new Rollouts[4];
+		for(int i = 0; i < 4; i++) {
+			long shifted = Board.shift(board, Board.DIRECTIONS[i]);
+			if(shifted == board) continue;
+
+			// With a time budget, every thread gets its own share of tasks that keep playing until the deadline
+			int count = deadline == 0 ? rollouts : SPLIT_THRESHOLD * pool().getParallelism();
+			tasks[i] = new Rollouts(shifted, count, deadline, spawner.split());
+		}
+
+		return run(tasks, Board.DIRECTIONS, start, spawner);
+	}
+
+
+
+	/**
+	 * Finds the direction whose rollouts survive the most moves on average, for a board of any shape
+	 * Returns the first direction if no direction moves the board
+	 *
+	 * @param game
+	 * @return dir
+	 */
+	public char bestMove(GameState game) {
+		long start = System.nanoTime();
+		long deadline = budgetNanos > 0 ? start + budgetNanos : 0;
+		Rules rules = game.getRules();
+		char[] directions = rules.directions();
+
+		long[] board = new long[rules.words()];
+		for(int cell = 0; cell < rules.cells(); cell++) rules.set(board, cell, game.get(cell));
+		Spawner spawner = new Spawner(Spawner.mix(Arrays.hashCode(board) ^ (long)game.getScore() << 32), game.getSpawner().getFourProbability());
+
+		Rollouts[] tasks = new Rollouts[directions.length];
+		for(int i = 0; i < directions.length; i++) {
+			long[] shifted = new long[board.length];
+			if(!rules.shift(board, directions[i], shifted)) continue;
+
+			int count = deadline == 0 ? rollouts : SPLIT_THRESHOLD * pool().getParallelism();
+			tasks[i] = new Rollouts(rules, shifted, count, deadline, spawner.split());
+		}
+
+		return run(tasks, directions, start, spawner);
+	}
+
+
+
+	/**
+	 * Plays the tasks (one per direction, null if the direction does not move) and picks the best direction
+	 *
+	 * @param tasks
+	 * @param directions
+	 * @param start
+	 * @param spawner breaks ties between directions
+	 * @return dir
+	 */
+	private char run(Rollouts[] tasks, char[] directions, long start, Spawner spawner) {
+		RecursiveAction all = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				for(Rollouts task : tasks) if(task != null) task.fork();
+				for(Rollouts task : tasks) if(task != null) task.join();
+			}
+		};
+
+		// A worker of the pool plays its share itself rather than waiting for another thread of the same pool
+		ForkJoinPool target = pool();
+		if(ForkJoinTask.getPool() == target) all.invoke();
+		else target.invoke(all);
+
+		char best = directions[0];
+		double bestAverage = -1;
+		long played = 0;
+		int ties = 0;
+		for(int i = 0; i < tasks.length; i++) {
+			if(tasks[i] == null) continue;
+			played += tasks[i].played;
+			double average = tasks[i].score / (double)tasks[i].played;
+			if(average > bestAverage) {
+				bestAverage = average;
+				best = directions[i];
+				ties = 1;
+
+			// Every direction of a tie is kept with the same probability
+			} else if(average == bestAverage && spawner.nextInt(++ties) == 0) best = directions[i];
+		}
+
+		ROLLOUTS.add(played);
+		SEARCH_NANOS.add(System.nanoTime() - start);
+		return best;
+	}
+
+
+
+	/**
+	 * Plays a random game from the given board (a new block is spawned first) until no valid moves are left
+	 *
+	 * @param board
+	 * @param spawner
+	 * @return number of valid moves made
+	 */
+	static int rollout(long board, Spawner spawner) {
+		int moves = 0;
+		board = spawner.spawn(board);
+
+		while(true) {
+
+			// Trying the four directions starting from a random one
+			int start = spawner.nextInt(4);
+			long shifted = board;
+			for(int i = 0; i < 4 && shifted == board; i++) shifted = Board.shift(board, Board.DIRECTIONS[(start + i) & 3]);
+			if(shifted == board) return moves;
+
+			board = spawner.spawn(shifted);
+			moves++;
+		}
+	}
+
+
+
+	/**
+	 * Plays a random game on a board of any shape, like rollout(long, Spawner), for at most MAX_ROLLOUT_MOVES
+	 * A game that is cut off also scores the number of empty slots left, which tells apart rollouts that all
+	 * reached the cutoff
+	 *
+	 * @param rules
+	 * @param start board to start from; not changed
+	 * @param spawner
+	 * @param board scratch array of rules.words() longs
+	 * @param next scratch array of rules.words() longs
+	 * @param directions the rules' directions
+	 * @return number of valid moves made, plus the empty slots if the game was cut off
+	 */
+	static int rollout(Rules rules, long[] start, Spawner spawner, long[] board, long[] next, char[] directions) {
+		int moves = 0;
+		System.arraycopy(start, 0, board, 0, board.length);
+		rules.spawn(board, spawner);
+
+		while(moves < MAX_ROLLOUT_MOVES) {
+			int first = spawner.nextInt(directions.length);
+			boolean moved = false;
+			for(int i = 0; i < directions.length && !moved; i++) moved = rules.shift(board, directions[(first + i) % directions.length], next);
+			if(!moved) return moves;
+
+			long[] shifted = next;
+			next = board;
+			board = shifted;
+			rules.spawn(board, spawner);
+			moves++;
+		}
+
+		int empty = 0;
+		for(int cell = 0; cell < rules.cells(); cell++) if(rules.get(board, cell) == 0) empty++;
+		return moves + empty;
+	}
+
+
+
+	// Pool the rollouts are played in (see the constructor)
+	private ForkJoinPool pool() {
+		if(pool != null) return pool;
+		return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+	}
+
+
+
+	/**
+	 * Returns the number of rollouts played per second of search time so far, over all instances
+	 *
+	 * @return rollouts per second
+	 */
+	public static double rolloutsPerSecond() {
+		long nanos = SEARCH_NANOS.sum();
+		return nanos == 0 ? 0 : ROLLOUTS.sum() / (nanos / 1e9);
+	}
+
+
+
+	@Override
+	public String report() {
+		return String.format("MonteCarlo: %d rollouts played, %.0f rollouts/sec", ROLLOUTS.sum(), rolloutsPerSecond());
+	}
+
+
+
+	/**
+	 * Rollouts class
+	 *
+	 * Fork-join task playing a number of rollouts from one board and adding up their scores (see rollout).
+	 * With a deadline, the task keeps playing batches of that size until the deadline has passed.
+	 * The board is either a packed 4x4 long (rules == null) or a long[] board of the given rules.
+	 */
+	private static class Rollouts extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long board, deadline;
+		private final Rules rules;
+		private final long[] words;
+		private final int count;
+		private final Spawner spawner;
+
+		// Results, read by the parent after joining
+		long score = 0, played = 0;
+
+		Rollouts(long board, int count, long deadline, Spawner spawner) {
+			this(board, null, null, count, deadline, spawner);
+		}
+
+		Rollouts(Rules rules, long[] words, int count, long deadline, Spawner spawner) {
+			this(0, rules, words, count, deadline, spawner);
+		}
+
+		private Rollouts(long board, Rules rules, long[] words, int count, long deadline, Spawner spawner) {
+			this.board = board;
+			this.rules = rules;
+			this.words = words;
+			this.count = count;
+			this.deadline = deadline;
+			this.spawner = spawner;
+		}
+
+		@Override
+		protected void compute() {
+			if(count > SPLIT_THRESHOLD) {
+				Rollouts left = new Rollouts(board, rules, words, count / 2, deadline, spawner.split());
+				Rollouts right = new Rollouts(board, rules, words, count - count / 2, deadline, spawner.split());
+				invokeAll(left, right);
+				score = left.score + right.score;
+				played = left.played + right.played;
+				return;
+			}
+
+			long[] scratch = null, next = null;
+			char[] directions = null;
+			if(rules != null) {
+				scratch = new long[words.length];
+				next = new long[words.length];
+				directions = rules.directions();
+			}
+
+			do {
+				for(int i = 0; i < count; i++) score += rules == null ? rollout(board, spawner) : rollout(rules, words, spawner, scratch, next, directions);
+				played += count;
+			} while(deadline != 0 && System.nanoTime() < deadline);
+		}
+	}
+}
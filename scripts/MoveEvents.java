@@ -0,0 +1,111 @@
+package scripts;
+
+import java.util.Arrays;
+
+
+
+/**
+ * MoveEvents class
+ *
+ * A reusable buffer of what happened during one move: every block that slid, every block that merged into
+ * another one, and the block that was spawned afterwards. It is filled by GameState.move(dir, events) and
+ * read by the animation (PanelComponents) or anything else that needs to follow a game block by block.
+ *
+ * Each event is packed into a single int, so filling and reading the buffer allocates nothing once it has
+ * grown to the largest board used:
+ * 	bits 0-7	source slot (the new block's slot for a spawn)
+ * 	bits 8-15	destination slot
+ * 	bits 16-19	exponent of the moving (or spawned) block
+ * 	bit 20		merged: the block merged into the block already at the destination
+ * 	bit 21		spawned: a new block, not a moving one
+ *
+ * Slot indices are those of the game's Rules (y*size + x, plus z*size*size on the cube).
+ *
+ * @author Kevin1031
+ */
+public class MoveEvents {
+
+	private static final int MERGED = 1 << 20, SPAWNED = 1 << 21;
+
+	private int[] events = new int[32];
+	private int size = 0;
+
+
+
+	/**
+	 * Removes all events; the buffer keeps its capacity
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+
+
+	/**
+	 * Adds a block sliding from one slot to another, merging into the block at the destination if merged is set
+	 *
+	 * @param from
+	 * @param to
+	 * @param exponent
+	 * @param merged
+	 */
+	public void addMove(int from, int to, int exponent, boolean merged) {
+		add(from | to << 8 | exponent << 16 | (merged ? MERGED : 0));
+	}
+
+
+
+	/**
+	 * Adds a new block appearing in the given slot
+	 *
+	 * @param cell
+	 * @param exponent
+	 */
+	public void addSpawn(int cell, int exponent) {
+		add(cell | cell << 8 | exponent << 16 | SPAWNED);
+	}
+
+
+
+	/**
+	 * Adds an event in the packed form returned by get()
+	 *
+	 * @param event
+	 */
+	public void add(int event) {
+		if(size == events.length) events = Arrays.copyOf(events, size * 2);
+		events[size++] = event;
+	}
+
+
+
+	// Number of events
+	public int size() {
+		return size;
+	}
+
+	// Event i in packed form, e.g. for writing it elsewhere
+	public int get(int i) {
+		return events[i];
+	}
+
+	public int from(int i) {
+		return events[i] & 0xFF;
+	}
+
+	public int to(int i) {
+		return events[i] >>> 8 & 0xFF;
+	}
+
+	public int exponent(int i) {
+		return events[i] >>> 16 & 0xF;
+	}
+
+	public boolean isMerged(int i) {
+		return (events[i] & MERGED) != 0;
+	}
+
+	public boolean isSpawned(int i) {
+		return (events[i] & SPAWNED) != 0;
+	}
+}
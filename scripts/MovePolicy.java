@@ -0,0 +1,41 @@
+package scripts;
+
+
+
+/**
+ * MovePolicy interface
+ *
+ * A strategy that decides which direction (W, A, S, D) to shift next in a game.
+ * Used by the Simulator to play games without any user input. Custom policies can be plugged into the
+ * Simulator by class name, as long as they have a constructor without parameters.
+ *
+ * Each game is played by a single thread, so a policy instance is never used by two threads at once;
+ * a new instance is created for every batch of games.
+ *
+ * @author Kevin1031
+ */
+public interface MovePolicy {
+
+	/**
+	 * Chooses the next direction to shift
+	 * If no valid moves are left, any direction may be returned; the game will then be over
+	 * Otherwise a direction that does not move the board makes no progress, and the Simulator stops with an
+	 * error after MAX_STALLS of them in a row
+	 *
+	 * @param game
+	 * @return dir
+	 */
+	char nextMove(GameState game);
+
+
+
+	/**
+	 * Returns a summary of the work done by the policy (e.g. searched nodes per millisecond) to be printed
+	 * after a simulation, or null if there is nothing to report
+	 *
+	 * @return report
+	 */
+	default String report() {
+		return null;
+	}
+}
@@ -0,0 +1,179 @@
+package scripts;
+
+
+
+/**
+ * MoveTable class
+ *
+ * This class holds precomputed results of shifting every possible 16-bit row of a packed board (see Board class).
+ * With 4 slots of 4 bits each there are only 65,536 different rows, so the result of shifting each of them left
+ * and right, along with the score gained from merging, is calculated once when the class is loaded.
+ * Afterwards, shifting a whole board is just four table lookups; up and down shifts transpose the board first
+ * so that its columns become rows.
+ *
+ * The tables are filled by Board.shiftRow, which also adds up the score of a row while it is shifted, one merge
+ * at a time.
+ *
+ * @author Kevin1031
+ */
+public class MoveTable {
+
+	// Shifted rows, indexed by the original row
+	private static final char[] LEFT = new char[65536], RIGHT = new char[65536];
+
+	// Score gained by merges during the shift (sum of the numbers of all newly merged blocks)
+	private static final int[] LEFT_SCORE = new int[65536], RIGHT_SCORE = new int[65536];
+
+	static {
+		for(int row = 0; row < 65536; row++) {
+			long left = Board.shiftRow(row, Board.SIZE, false);
+			long right = Board.shiftRow(row, Board.SIZE, true);
+			LEFT[row] = (char)left;
+			RIGHT[row] = (char)right;
+			LEFT_SCORE[row] = (int)(left >>> 32);
+			RIGHT_SCORE[row] = (int)(right >>> 32);
+		}
+	}
+
+
+
+	/**
+	 * Returns the row after shifting it towards its lowest nibble
+	 * The row moved if and only if the result differs from the given row
+	 *
+	 * @param row
+	 * @return row
+	 */
+	public static int left(int row) {
+		return LEFT[row];
+	}
+
+
+
+	/**
+	 * Returns the row after shifting it towards its highest nibble
+	 * The row moved if and only if the result differs from the given row
+	 *
+	 * @param row
+	 * @return row
+	 */
+	public static int right(int row) {
+		return RIGHT[row];
+	}
+
+
+
+	/**
+	 * Returns the score gained by merges when shifting the row towards its lowest nibble
+	 *
+	 * @param row
+	 * @return score
+	 */
+	public static int leftScore(int row) {
+		return LEFT_SCORE[row];
+	}
+
+
+
+	/**
+	 * Returns the score gained by merges when shifting the row towards its highest nibble
+	 *
+	 * @param row
+	 * @return score
+	 */
+	public static int rightScore(int row) {
+		return RIGHT_SCORE[row];
+	}
+
+
+
+	/**
+	 * Shifts the whole board to one of the four directions using the row tables
+	 * W = up
+	 * S = down
+	 * D = right
+	 * A = left
+	 *
+	 * @param board
+	 * @param dir
+	 * @return board
+	 */
+	public static long shift(long board, char dir) {
+		switch(dir) {
+		case 'W': return transpose(shiftRows(transpose(board), LEFT));
+		case 'S': return transpose(shiftRows(transpose(board), RIGHT));
+		case 'A': return shiftRows(board, LEFT);
+		case 'D': return shiftRows(board, RIGHT);
+		}
+		return board;
+	}
+
+
+
+	/**
+	 * Returns the score gained by merges if the board is shifted to the given direction
+	 *
+	 * @param board
+	 * @param dir
+	 * @return score
+	 */
+	public static int score(long board, char dir) {
+		switch(dir) {
+		case 'W': return scoreRows(transpose(board), LEFT_SCORE);
+		case 'S': return scoreRows(transpose(board), RIGHT_SCORE);
+		case 'A': return scoreRows(board, LEFT_SCORE);
+		case 'D': return scoreRows(board, RIGHT_SCORE);
+		}
+		return 0;
+	}
+
+
+
+	/**
+	 * Replaces each of the four rows with its entry in the given table
+	 *
+	 * @param board
+	 * @param table
+	 * @return board
+	 */
+	private static long shiftRows(long board, char[] table) {
+		return (long)table[(int)(board & 0xFFFF)]
+			| (long)table[(int)(board >>> 16 & 0xFFFF)] << 16
+			| (long)table[(int)(board >>> 32 & 0xFFFF)] << 32
+			| (long)table[(int)(board >>> 48 & 0xFFFF)] << 48;
+	}
+
+
+
+	/**
+	 * Sums the entries of the four rows in the given score table
+	 *
+	 * @param board
+	 * @param table
+	 * @return score
+	 */
+	private static int scoreRows(long board, int[] table) {
+		return table[(int)(board & 0xFFFF)]
+			+ table[(int)(board >>> 16 & 0xFFFF)]
+			+ table[(int)(board >>> 32 & 0xFFFF)]
+			+ table[(int)(board >>> 48 & 0xFFFF)];
+	}
+
+
+
+	/**
+	 * Swaps rows and columns of the board, so slot (x, y) moves to (y, x)
+	 * Works by swapping 4-bit and then 8-bit blocks across the diagonal with masks
+	 *
+	 * @param board
+	 * @return board
+	 */
+	public static long transpose(long board) {
+		long a = board & 0xF0F00F0FF0F00F0FL
+			| (board & 0x0000F0F00000F0F0L) << 12
+			| (board & 0x0F0F00000F0F0000L) >>> 12;
+		return a & 0xFF00FF0000FF00FFL
+			| (a & 0x00FF00FF00000000L) >>> 24
+			| (a & 0x00000000FF00FF00L) << 24;
+	}
+}
@@ -0,0 +1,218 @@
+package scripts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+
+/**
+ * NTupleNetwork class
+ *
+ * A learned evaluation function for packed boards (see Board class).
+ * The network is a set of n-tuples: small groups of slots (e.g. a row or a 2x3 rectangle). The exponents in a
+ * tuple's slots form an index into that tuple's table of weights, and the value of a board is the sum of the
+ * looked-up weights. Every tuple is applied to all 8 rotations and reflections of the board (symmetric
+ * sampling, see Symmetry class), so one tuple covers every position of the same shape and learns 8 times as fast.
+ *
+ * All weights are stored in one flat float[]; tuple i owns the 16^length(i) weights starting at offset[i].
+ * Updates are not synchronized: TDTrainer lets several threads update the same network at once, accepting
+ * the occasional lost update (Hogwild-style), which costs far less than any locking would.
+ *
+ * @author Kevin1031
+ */
+public class NTupleNetwork {
+
+	// Identifies weight files written by save()
+	private static final int MAGIC = 0x32303438;
+
+	// Default tuples: two straight lines and two 2x3 rectangles (slot index = y*4 + x)
+	static final int[][] DEFAULT_TUPLES = {
+		{0, 1, 2, 3},
+		{4, 5, 6, 7},
+		{0, 1, 2, 4, 5, 6},
+		{4, 5, 6, 8, 9, 10}};
+
+	private final int[][] tuples;
+	private final int[] offsets;
+	private final float[] weights;
+
+
+
+	/**
+	 * Creates a network with the default tuples and all weights zero
+	 */
+	public NTupleNetwork() {
+		this(DEFAULT_TUPLES);
+	}
+
+
+
+	/**
+	 * Creates a network with the given tuples and all weights zero
+	 *
+	 * @param tuples slot indices (y*4 + x) of each tuple
+	 */
+	public NTupleNetwork(int[][] tuples) {
+		this.tuples = new int[tuples.length][];
+		this.offsets = new int[tuples.length];
+
+		long size = 0;
+		for(int i = 0; i < tuples.length; i++) {
+			for(int cell : tuples[i]) {
+				if(cell < 0 || cell >= 16) throw new IllegalArgumentException("Slot index out of range: " + cell);
+			}
+			this.tuples[i] = tuples[i].clone();
+			this.offsets[i] = (int)size;
+			size += 1L << (tuples[i].length << 2);
+		}
+		if(size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many weights: " + size);
+		this.weights = new float[(int)size];
+	}
+
+
+
+	/**
+	 * Estimates the total score that will still be gained from this board
+	 *
+	 * @param board
+	 * @return value
+	 */
+	public float value(long board) {
+		float value = 0;
+		long flipped = Symmetry.flipVertical(board), transposed = MoveTable.transpose(board), both = Symmetry.flipVertical(transposed);
+
+		value += tuplesValue(board) + tuplesValue(Symmetry.flipHorizontal(board));
+		value += tuplesValue(flipped) + tuplesValue(Symmetry.flipHorizontal(flipped));
+		value += tuplesValue(transposed) + tuplesValue(Symmetry.flipHorizontal(transposed));
+		value += tuplesValue(both) + tuplesValue(Symmetry.flipHorizontal(both));
+		return value;
+	}
+
+
+
+	/**
+	 * Adds delta to the value of the board, spread evenly over all weights that make up the value
+	 *
+	 * @param board
+	 * @param delta
+	 */
+	public void update(long board, float delta) {
+		float share = delta / (tuples.length * 8);
+		long flipped = Symmetry.flipVertical(board), transposed = MoveTable.transpose(board), both = Symmetry.flipVertical(transposed);
+
+		updateTuples(board, share);
+		updateTuples(Symmetry.flipHorizontal(board), share);
+		updateTuples(flipped, share);
+		updateTuples(Symmetry.flipHorizontal(flipped), share);
+		updateTuples(transposed, share);
+		updateTuples(Symmetry.flipHorizontal(transposed), share);
+		updateTuples(both, share);
+		updateTuples(Symmetry.flipHorizontal(both), share);
+	}
+
+
+
+	private float tuplesValue(long board) {
+		float value = 0;
+		for(int i = 0; i < tuples.length; i++) value += weights[offsets[i] + index(board, tuples[i])];
+		return value;
+	}
+
+	private void updateTuples(long board, float share) {
+		for(int i = 0; i < tuples.length; i++) weights[offsets[i] + index(board, tuples[i])] += share;
+	}
+
+
+
+	/**
+	 * Combines the exponents in the tuple's slots into an index
+	 *
+	 * @param board
+	 * @param tuple
+	 * @return index
+	 */
+	private static int index(long board, int[] tuple) {
+		int index = 0;
+		for(int cell : tuple) index = index << 4 | (int)(board >>> (cell << 2) & Board.CELL_MASK);
+		return index;
+	}
+
+
+
+	/**
+	 * Writes the tuples and weights to a file
+	 * The file is written next to the target first and then moved over it, so an interrupted save never
+	 * leaves a broken checkpoint behind
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public void save(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+			buffer.putInt(MAGIC).putInt(tuples.length);
+			for(int[] tuple : tuples) {
+				buffer.putInt(tuple.length);
+				for(int cell : tuple) buffer.putInt(cell);
+			}
+
+			for(float weight : weights) {
+				if(!buffer.hasRemaining()) {
+					buffer.flip();
+					while(buffer.hasRemaining()) channel.write(buffer);
+					buffer.clear();
+				}
+				buffer.putFloat(weight);
+			}
+			buffer.flip();
+			while(buffer.hasRemaining()) channel.write(buffer);
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+
+	/**
+	 * Reads a network written by save()
+	 *
+	 * @param path
+	 * @return network
+	 * @throws IOException
+	 */
+	public static NTupleNetwork load(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+			buffer.limit(0);
+
+			if(readInt(channel, buffer) != MAGIC) throw new IOException("Not a weight file: " + path);
+			int[][] tuples = new int[readInt(channel, buffer)][];
+			for(int i = 0; i < tuples.length; i++) {
+				tuples[i] = new int[readInt(channel, buffer)];
+				for(int j = 0; j < tuples[i].length; j++) tuples[i][j] = readInt(channel, buffer);
+			}
+
+			NTupleNetwork network = new NTupleNetwork(tuples);
+			for(int i = 0; i < network.weights.length; i++) network.weights[i] = Float.intBitsToFloat(readInt(channel, buffer));
+			return network;
+		}
+	}
+
+	private static int readInt(FileChannel channel, ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < 4) {
+			buffer.compact();
+			while(buffer.position() < 4) {
+				if(channel.read(buffer) < 0) throw new IOException("Weight file ended unexpectedly");
+			}
+			buffer.flip();
+		}
+		return buffer.getInt();
+	}
+}
@@ -0,0 +1,79 @@
+package scripts;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+
+
+/**
+ * NTuplePolicy class
+ *
+ * A MovePolicy that picks the shift with the highest merge score plus the network's value of the result.
+ * The weights are read from the file named by the system property "ntuple.weights" (default "ntuple.weights"),
+ * as written by TDTrainer. The file is loaded once and shared by all instances, since the policy only reads it.
+ *
+ * @author Kevin1031
+ */
+class NTuplePolicy implements MovePolicy {
+
+	// Returned by bestMove when no direction moves the board; not a direction, so callers must check for it
+	static final char NO_MOVE = 0;
+
+	private static NTupleNetwork shared;
+
+	private final NTupleNetwork network;
+
+	NTuplePolicy() {
+		this(sharedNetwork());
+	}
+
+	NTuplePolicy(NTupleNetwork network) {
+		this.network = network;
+	}
+
+	private static synchronized NTupleNetwork sharedNetwork() {
+		if(shared == null) {
+			Path path = Path.of(System.getProperty("ntuple.weights", "ntuple.weights"));
+			try {
+				shared = NTupleNetwork.load(path);
+			} catch(IOException e) {
+				throw new IllegalStateException("Could not load n-tuple weights from " + path + ": " + e.getMessage(), e);
+			}
+		}
+		return shared;
+	}
+
+	@Override
+	public char nextMove(GameState game) {
+		// Once no direction moves, any one will do (see MovePolicy)
+		char dir = bestMove(network, game.getBoard());
+		return dir == NO_MOVE ? Board.DIRECTIONS[0] : dir;
+	}
+
+
+
+	/**
+	 * Returns the direction with the highest merge score plus value of the shifted board
+	 * Returns NO_MOVE if no direction moves the board, which must not be passed on as a direction
+	 *
+	 * @param network
+	 * @param board
+	 * @return dir
+	 */
+	static char bestMove(NTupleNetwork network, long board) {
+		char best = NO_MOVE;
+		float bestValue = Float.NEGATIVE_INFINITY;
+
+		for(char dir : Board.DIRECTIONS) {
+			long shifted = Board.shift(board, dir);
+			if(shifted == board) continue;
+
+			float value = MoveTable.score(board, dir) + network.value(shifted);
+			if(value > bestValue) {
+				bestValue = value;
+				best = dir;
+			}
+		}
+		return best;
+	}
+}
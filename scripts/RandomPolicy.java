@@ -0,0 +1,29 @@
+package scripts;
+
+
+
+/**
+ * RandomPolicy class
+ *
+ * Shifts into a random direction that actually moves the board.
+ * The choice is a hash of the game's spawner state and score rather than a draw from a shared generator,
+ * so it needs no state and a game played from a given seed is still reproduced exactly.
+ * Works on boards of any shape.
+ *
+ * @author Kevin1031
+ */
+class RandomPolicy implements MovePolicy {
+
+	@Override
+	public char nextMove(GameState game) {
+		char[] directions = game.getRules().directions();
+
+		// Trying the directions starting from a random one
+		int start = (int)(((Spawner.mix(game.getSpawner().getState() ^ game.getScore()) >>> 32) * directions.length) >>> 32);
+		for(int i = 0; i < directions.length; i++) {
+			char dir = directions[(start + i) % directions.length];
+			if(game.canShift(dir)) return dir;
+		}
+		return directions[start];
+	}
+}
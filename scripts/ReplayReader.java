@@ -0,0 +1,225 @@
+package scripts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+
+/**
+ * ReplayReader class
+ *
+ * Reads a replay file written by ReplayWriter. The file is mapped into memory, and every game is read directly
+ * from the mapping through its offset in the index, so any game can be looked at without reading the ones before
+ * it, and scanning or replaying millions of games allocates nothing per game.
+ * If the file has no index (its writer was never closed), the index is rebuilt by walking through the chunks.
+ *
+ * Usage:
+ * 		java scripts.ReplayReader <file> [-verify]
+ * prints a summary of the file; -verify replays every game and checks its moves and largest tile.
+ *
+ * @author Kevin1031
+ */
+public class ReplayReader implements Closeable {
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+
+	// Position of the first game offset in the index, or -1 if the index was rebuilt into offsets
+	private final int indexStart;
+	private final long[] offsets;
+	private final int count;
+
+	// Directions of flat boards and of the cube, in the order of their indices
+	private final char[] flatDirections = Rules.CLASSIC.directions(), cubeDirections = Rules.CUBE.directions();
+
+
+
+	/**
+	 * Opens a replay file
+	 *
+	 * @param path
+	 * @throws IOException if the file is not a replay file, has an unknown version, or is larger than 2 GB
+	 */
+	public ReplayReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		long size = channel.size();
+		if(size > Integer.MAX_VALUE) throw new IOException("Replay file larger than 2 GB: " + path);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+		if(size < ReplayWriter.HEADER_BYTES || buffer.getInt(0) != ReplayWriter.MAGIC) throw new IOException("Not a replay file: " + path);
+		if(buffer.getShort(4) != ReplayWriter.VERSION) throw new IOException("Unsupported replay version " + buffer.getShort(4) + ": " + path);
+
+		// Index written by ReplayWriter.close()
+		int end = (int)size - ReplayWriter.TRAILER_BYTES;
+		if(end >= ReplayWriter.HEADER_BYTES && buffer.getInt(end + 8) == ReplayWriter.END_MAGIC) {
+			int index = (int)buffer.getLong(end);
+			if(buffer.getInt(index) != ReplayWriter.INDEX_MAGIC) throw new IOException("Damaged replay index: " + path);
+			count = buffer.getInt(index + 4);
+			indexStart = index + 8;
+			offsets = null;
+			return;
+		}
+
+		// No index: walking through the complete chunks
+		long[] found = new long[1024];
+		int games = 0;
+		int chunk = ReplayWriter.HEADER_BYTES;
+		while(chunk + ReplayWriter.CHUNK_HEADER_BYTES <= size && buffer.getInt(chunk) == ReplayWriter.CHUNK_MAGIC) {
+			int chunkGames = buffer.getInt(chunk + 4), bytes = buffer.getInt(chunk + 8);
+			if((long)chunk + ReplayWriter.CHUNK_HEADER_BYTES + bytes > size) break;
+
+			int game = chunk + ReplayWriter.CHUNK_HEADER_BYTES;
+			for(int i = 0; i < chunkGames; i++) {
+				if(games == found.length) found = Arrays.copyOf(found, games * 2);
+				found[games++] = game;
+				game += ReplayWriter.GAME_HEADER_BYTES + ReplayWriter.packedBytes(buffer.getInt(game + 16), buffer.get(game + 3));
+			}
+			chunk += ReplayWriter.CHUNK_HEADER_BYTES + bytes;
+		}
+		count = games;
+		offsets = found;
+		indexStart = -1;
+	}
+
+
+
+	// Number of games in the file
+	public int count() {
+		return count;
+	}
+
+	// Position of game n in the file
+	private int offset(int n) {
+		if(n < 0 || n >= count) throw new IndexOutOfBoundsException("Game " + n + " of " + count);
+		return (int)(offsets == null ? buffer.getLong(indexStart + 8 * n) : offsets[n]);
+	}
+
+	public Rules getRules(int n) {
+		int offset = offset(n);
+		return buffer.get(offset + 1) > 1 ? Rules.CUBE : Rules.of(buffer.get(offset));
+	}
+
+	// Largest tile at the end of game n
+	public int getMax(int n) {
+		return Board.toValue(buffer.get(offset(n) + 2));
+	}
+
+	public double getFourProbability(int n) {
+		return buffer.getInt(offset(n) + 4) / (double)(1 << 16);
+	}
+
+	// State of the spawner before the first blocks of game n were placed
+	public long getSeed(int n) {
+		return buffer.getLong(offset(n) + 8);
+	}
+
+	// Number of valid moves of game n, which is also its score
+	public int getMoves(int n) {
+		return buffer.getInt(offset(n) + 16);
+	}
+
+
+
+	/**
+	 * Returns the direction of move i of game n
+	 *
+	 * @param n
+	 * @param i
+	 * @return dir
+	 */
+	public char getDirection(int n, int i) {
+		int offset = offset(n);
+		int bits = buffer.get(offset + 3);
+		if(i < 0 || i >= buffer.getInt(offset + 16)) throw new IndexOutOfBoundsException("Move " + i + " of game " + n);
+
+		// A move may reach into the next byte, which is only read if it does
+		int bit = i * bits, position = offset + ReplayWriter.GAME_HEADER_BYTES + (bit >>> 3), shift = bit & 7;
+		int value = buffer.get(position) & 0xFF;
+		if(shift + bits > 8) value |= (buffer.get(position + 1) & 0xFF) << 8;
+		int index = value >>> shift & ((1 << bits) - 1);
+
+		return (buffer.get(offset + 1) > 1 ? cubeDirections : flatDirections)[index];
+	}
+
+
+
+	/**
+	 * Plays game n again on the given game, which must have the game's rules and 4-probability
+	 * The game is reset with the recorded spawner state, so it ends in exactly the position the recorded game ended in
+	 *
+	 * @param n
+	 * @param game
+	 * @return game
+	 * @throws IllegalArgumentException if the game has other rules or another 4-probability
+	 * @throws IllegalStateException if a recorded move does not move the board (the file does not match the rules)
+	 */
+	public GameState replay(int n, GameState game) {
+		if(game.getRules() != getRules(n) || game.getSpawner().getFourProbability() != getFourProbability(n))
+			throw new IllegalArgumentException("Game " + n + " was played with other rules or another probability of 4s");
+
+		game.getSpawner().setState(getSeed(n));
+		game.reset();
+		int moves = getMoves(n);
+		for(int i = 0; i < moves; i++) {
+			if(!game.move(getDirection(n, i))) throw new IllegalStateException("Move " + i + " of game " + n + " does not move the board");
+		}
+		return game;
+	}
+
+
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+
+	/**
+	 * Main Method
+	 * Prints the number of games, moves and bytes per move of a replay file, and verifies every game with -verify
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.err.println("Usage: java scripts.ReplayReader <file> [-verify]");
+			System.exit(1);
+		}
+
+		try(ReplayReader reader = new ReplayReader(Paths.get(args[0]))) {
+			long moves = 0;
+			int best = 0;
+			for(int n = 0; n < reader.count(); n++) {
+				moves += reader.getMoves(n);
+				best = Math.max(best, reader.getMax(n));
+			}
+			long bytes = reader.channel.size();
+			System.out.printf("%d games, %d moves, largest tile %d%n", reader.count(), moves, best);
+			System.out.printf("%d bytes: %.1f per game, %.2f bits per move%n", bytes, bytes / (double)Math.max(1, reader.count()), 8.0 * bytes / Math.max(1, moves));
+			if(args.length < 2 || !args[1].equals("-verify")) return;
+
+			// Replaying on one game per shape and probability, reused from game to game
+			long start = System.nanoTime();
+			GameState game = null;
+			for(int n = 0; n < reader.count(); n++) {
+				if(game == null || game.getRules() != reader.getRules(n) || game.getSpawner().getFourProbability() != reader.getFourProbability(n))
+					game = new GameState(reader.getRules(n), new Spawner(0, reader.getFourProbability(n)));
+				reader.replay(n, game);
+				if(game.getScore() != reader.getMoves(n) || game.getMax() != reader.getMax(n))
+					throw new IllegalStateException("Game " + n + " does not end as recorded");
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Verified %d games in %.3f s (%.0f moves/sec)%n", reader.count(), seconds, moves / seconds);
+		} catch(IOException | RuntimeException e) {
+			System.err.println(e);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package scripts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+
+
+/**
+ * ReplayRecorder class
+ *
+ * Records the games played by a GameState (see GameState.setRecorder) into a ReplayWriter. The game calls begin()
+ * when it is reset, move() after every valid move and finish() when it is over; the moves of the current game are
+ * packed into a buffer that is reused for the next game, so recording allocates nothing once the buffer has grown.
+ *
+ * A recorder belongs to one thread at a time, like the GameState it records; several recorders may share a writer.
+ *
+ * @author Kevin1031
+ */
+public class ReplayRecorder {
+
+	private final ReplayWriter writer;
+
+	// Game being recorded; null between games
+	private GameState game;
+	private char[] directions;
+	private int bits;
+	private long seed;
+
+	private byte[] packed = new byte[256];
+	private int moves = 0;
+
+
+
+	/**
+	 * Creates a recorder writing finished games to the given writer
+	 *
+	 * @param writer
+	 */
+	public ReplayRecorder(ReplayWriter writer) {
+		this.writer = writer;
+	}
+
+
+
+	/**
+	 * Starts recording a game; called by the game before its first blocks are placed
+	 * A game that was still being recorded (e.g. restarted before it was over) is written first
+	 *
+	 * @param game
+	 */
+	void begin(GameState game) {
+		finish();
+		this.game = game;
+		directions = game.getRules().directions();
+		bits = ReplayWriter.bitsPerMove(game.getRules());
+		seed = game.getSpawner().getState();
+	}
+
+
+
+	/**
+	 * Adds a valid move to the game being recorded
+	 *
+	 * @param dir
+	 */
+	void move(char dir) {
+		if(game == null) return;
+
+		int index = 0;
+		while(directions[index] != dir) index++;
+
+		// A move can reach into the next byte, so there is always a spare byte at the end
+		int bit = moves * bits;
+		if((bit >>> 3) + 1 >= packed.length) packed = Arrays.copyOf(packed, packed.length * 2);
+		packed[bit >>> 3] |= index << (bit & 7);
+		packed[(bit >>> 3) + 1] |= index >>> (8 - (bit & 7));
+		moves++;
+	}
+
+
+
+	/**
+	 * Takes the last move out of the game being recorded, when it is undone
+	 */
+	void undo() {
+		if(game == null || moves == 0) return;
+		moves--;
+		int bit = moves * bits;
+		packed[bit >>> 3] &= (1 << (bit & 7)) - 1;
+		packed[(bit >>> 3) + 1] = 0;
+	}
+
+
+
+	/**
+	 * Writes the game being recorded, if any; called by the game when it is over
+	 * Can also be called when the program closes, to keep a game that is not over yet
+	 */
+	public void finish() {
+		if(game == null) return;
+		try {
+			int fourThreshold = (int)Math.round(game.getSpawner().getFourProbability() * (1 << 16));
+			writer.write(game.getRules(), seed, fourThreshold, moves, packed, Board.toExponent(game.getMax()));
+		} catch(IOException e) {
+			throw new UncheckedIOException("Could not write replay", e);
+		} finally {
+			Arrays.fill(packed, 0, ReplayWriter.packedBytes(moves, bits) + 1, (byte)0);
+			moves = 0;
+			game = null;
+		}
+	}
+}
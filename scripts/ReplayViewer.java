@@ -0,0 +1,199 @@
+package scripts;
+
+
+
+/**
+ * ReplayViewer class
+ *
+ * Plays back one game of a replay file (see ReplayReader) on a GameState, forwards and backwards.
+ * While the viewer is created, the game is played through once and a snapshot of the board is kept every
+ * interval moves (a keyframe). Seeking to a move restores the nearest keyframe before it and plays the remaining
+ * moves (fewer than interval), so any move of even a very long game is reached at once.
+ *
+ * Playback runs at a multiple of the normal pace of BASE_RATE moves per second, from 1x to 1000x. The viewer
+ * only says how many moves are due (due()); the caller decides whether to animate a single move or to jump
+ * over many of them and draw the result once per frame.
+ *
+ * @author Kevin1031
+ */
+public class ReplayViewer {
+
+	// Moves per second at 1x: one move per animation, the pace of the automatic player
+	static final int BASE_RATE = 10;
+
+	// Playback speeds that faster() and slower() step through
+	private static final int[] SPEEDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+	// Moves between two keyframes unless another interval is given
+	static final int DEFAULT_INTERVAL = 256;
+
+	private final ReplayReader reader;
+	private final int number, length, interval;
+	private final GameState game;
+
+	// Board words and spawner state after every interval-th move; keyframe k is after move k * interval
+	private final long[] boards, states;
+	private final int words;
+
+	// Number of moves played on the game so far
+	private int position = 0;
+
+	private int speed = 0;
+	private boolean paused = false;
+
+	// Time up to which due moves were counted, and the fraction of a move left over from then
+	private long lastTime = -1;
+	private double owed = 0;
+
+
+
+	/**
+	 * Creates a viewer for game number of the reader, positioned at the start of the game
+	 *
+	 * @param reader
+	 * @param number
+	 * @param interval moves between two keyframes
+	 */
+	public ReplayViewer(ReplayReader reader, int number, int interval) {
+		if(interval < 1) throw new IllegalArgumentException("Keyframe interval must be at least 1: " + interval);
+		this.reader = reader;
+		this.number = number;
+		this.length = reader.getMoves(number);
+		this.interval = interval;
+
+		Rules rules = reader.getRules(number);
+		game = new GameState(rules, new Spawner(reader.getSeed(number), reader.getFourProbability(number)));
+		words = rules.words();
+		int keyframes = length / interval + 1;
+		boards = new long[keyframes * words];
+		states = new long[keyframes];
+
+		// Playing the whole game once to take the keyframes
+		game.reset();
+		for(int k = 0; k < keyframes; k++) {
+			if(k > 0) play(interval);
+			game.save(boards, k * words);
+			states[k] = game.getSpawner().getState();
+		}
+		seek(0);
+	}
+
+
+
+	/**
+	 * Moves to the position after the given number of moves
+	 *
+	 * @param move clamped to the game's length
+	 */
+	public void seek(int move) {
+		move = Math.max(0, Math.min(length, move));
+		int k = move / interval;
+
+		// Playing on from the current position if that is closer than the keyframe
+		if(move < position || move - position > move - k * interval) {
+			game.restore(boards, k * words, k * interval);
+			game.getSpawner().setState(states[k]);
+			position = k * interval;
+		}
+		play(move - position);
+	}
+
+
+
+	/**
+	 * Plays the given number of moves without recording their events
+	 *
+	 * @param moves
+	 */
+	private void play(int moves) {
+		for(int i = 0; i < moves; i++) game.move(reader.getDirection(number, position++));
+	}
+
+
+
+	/**
+	 * Jumps the given number of moves forwards (or backwards if negative)
+	 *
+	 * @param moves
+	 */
+	public void skip(int moves) {
+		seek(position + moves);
+	}
+
+
+
+	/**
+	 * Returns the direction of the next move and counts it as played; the caller must play it on the game,
+	 * e.g. with Grid.shift to animate it
+	 *
+	 * @return dir, or 0 at the end of the game
+	 */
+	public char next() {
+		if(position == length) return 0;
+		return reader.getDirection(number, position++);
+	}
+
+
+
+	/**
+	 * Returns the number of moves due since the last call at the current speed
+	 * Nothing is due while paused or at the end of the game
+	 *
+	 * @param now System.nanoTime()
+	 * @return moves
+	 */
+	public int due(long now) {
+		if(lastTime < 0 || paused || position == length) owed = 0;
+		else owed += (now - lastTime) / 1e9 * BASE_RATE * SPEEDS[speed];
+		lastTime = now;
+
+		int moves = (int)Math.min(owed, length - position);
+		owed -= moves;
+		return moves;
+	}
+
+
+
+	public void faster() {
+		speed = Math.min(speed + 1, SPEEDS.length - 1);
+	}
+
+	public void slower() {
+		speed = Math.max(speed - 1, 0);
+	}
+
+	public void togglePause() {
+		paused = !paused;
+	}
+
+	// Playback speed as a multiple of BASE_RATE
+	public int getSpeed() {
+		return SPEEDS[speed];
+	}
+
+	public GameState getGame() {
+		return game;
+	}
+
+	// Number of moves played so far
+	public int getPosition() {
+		return position;
+	}
+
+	// Number of moves in the game
+	public int getLength() {
+		return length;
+	}
+
+
+
+	/**
+	 * Returns a line describing the playback, for the window
+	 *
+	 * @return status
+	 */
+	public String status() {
+		return "Replay " + (number + 1) + "/" + reader.count() + ": move " + position + "/" + length + ", "
+				+ (paused ? "paused" : SPEEDS[speed] + "x");
+	}
+}
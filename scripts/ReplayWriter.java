@@ -0,0 +1,163 @@
+package scripts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+
+/**
+ * ReplayWriter class
+ *
+ * Writes games into a replay file, which ReplayReader can scan or replay. A game is fully determined by the state
+ * of its Spawner when it started and the directions of its valid moves, so only those are stored: 2 bits per move
+ * on flat boards (4 directions) and 3 bits per move on the cube (6 directions). Spawns are replayed from the seed.
+ *
+ * File layout (all numbers big-endian):
+ * 	header		int MAGIC ("2048"), short VERSION, short flags (0)
+ * 	chunks		int CHUNK_MAGIC, int number of games, int number of bytes, then the games one after another
+ * 	index		int INDEX_MAGIC, int number of games, long offset of every game in the file
+ * 	trailer		long offset of the index, int END_MAGIC
+ *
+ * Every game is:
+ * 	byte size, byte depth (1 for flat boards), byte exponent of the largest tile, byte bits per move,
+ * 	int 4-probability (out of 65536), long spawner state, int number of moves, then the moves, packed from the
+ * 	lowest bit of the first byte up (move i starts at bit i * bits per move)
+ *
+ * Games are collected in a chunk in memory and written with one call when the chunk is full. A file whose writer
+ * never closed it (no index) can still be read chunk by chunk.
+ * write() may be called from several threads; games are stored in the order they are written.
+ *
+ * @author Kevin1031
+ */
+public class ReplayWriter implements Closeable {
+
+	static final int MAGIC = 0x32303438, CHUNK_MAGIC = 0x43484E4B, INDEX_MAGIC = 0x494E4458, END_MAGIC = 0x454E4421;
+	static final short VERSION = 1;
+	static final int HEADER_BYTES = 8, CHUNK_HEADER_BYTES = 12, GAME_HEADER_BYTES = 20, TRAILER_BYTES = 12;
+
+	// Usual size of a chunk; a game that does not fit into an empty chunk gets a chunk of its own
+	private static final int CHUNK_BYTES = 1 << 16;
+
+	private final FileChannel channel;
+	private ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+	private int chunkGames = 0;
+
+	// Offset in the file where the current chunk will be written
+	private long position = HEADER_BYTES;
+
+	// Offset of every game written so far
+	private long[] offsets = new long[1024];
+	private int games = 0;
+
+
+
+	/**
+	 * Creates a new replay file, replacing an existing one
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public ReplayWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putShort(VERSION).putShort((short)0).flip();
+		writeFully(header);
+		chunk.position(CHUNK_HEADER_BYTES);
+	}
+
+
+
+	/**
+	 * Adds a game
+	 *
+	 * @param rules
+	 * @param seed state of the spawner before the first blocks were placed
+	 * @param fourThreshold probability that a new block is a 4, out of 65536
+	 * @param moves number of valid moves
+	 * @param packed the moves' direction indices (see Rules.directions) packed as described above
+	 * @param maxExponent exponent of the largest tile at the end
+	 * @throws IOException
+	 */
+	public synchronized void write(Rules rules, long seed, int fourThreshold, int moves, byte[] packed, int maxExponent) throws IOException {
+		int bits = bitsPerMove(rules);
+		int length = GAME_HEADER_BYTES + packedBytes(moves, bits);
+
+		if(chunk.remaining() < length) {
+			flushChunk();
+			if(chunk.remaining() < length) chunk = ByteBuffer.allocate(CHUNK_HEADER_BYTES + length).position(CHUNK_HEADER_BYTES);
+		}
+
+		if(games == offsets.length) offsets = Arrays.copyOf(offsets, games * 2);
+		offsets[games++] = position + chunk.position();
+		chunkGames++;
+
+		chunk.put((byte)rules.size()).put((byte)rules.depth()).put((byte)maxExponent).put((byte)bits);
+		chunk.putInt(fourThreshold).putLong(seed).putInt(moves);
+		chunk.put(packed, 0, packedBytes(moves, bits));
+	}
+
+
+
+	/**
+	 * Writes the remaining games and the index; the file is complete afterwards
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!channel.isOpen()) return;
+		flushChunk();
+
+		long indexOffset = position;
+		ByteBuffer index = ByteBuffer.allocate(8 + 8 * games + TRAILER_BYTES);
+		index.putInt(INDEX_MAGIC).putInt(games);
+		for(int i = 0; i < games; i++) index.putLong(offsets[i]);
+		index.putLong(indexOffset).putInt(END_MAGIC).flip();
+		writeFully(index);
+		channel.close();
+	}
+
+
+
+	/**
+	 * Writes the current chunk, if it holds any games, and starts a new one
+	 */
+	private void flushChunk() throws IOException {
+		if(chunkGames > 0) {
+			int bytes = chunk.position() - CHUNK_HEADER_BYTES;
+			chunk.putInt(0, CHUNK_MAGIC).putInt(4, chunkGames).putInt(8, bytes).flip();
+			writeFully(chunk);
+			position += CHUNK_HEADER_BYTES + bytes;
+		}
+		if(chunk.capacity() != CHUNK_BYTES) chunk = ByteBuffer.allocate(CHUNK_BYTES);
+		chunk.clear().position(CHUNK_HEADER_BYTES);
+		chunkGames = 0;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) channel.write(buffer);
+	}
+
+
+
+	/**
+	 * Returns the number of bits needed for the index of one of the rules' directions
+	 *
+	 * @param rules
+	 * @return bits per move
+	 */
+	static int bitsPerMove(Rules rules) {
+		return 32 - Integer.numberOfLeadingZeros(rules.directions().length - 1);
+	}
+
+	// Number of bytes holding the given number of packed moves
+	static int packedBytes(int moves, int bits) {
+		return (int)(((long)moves * bits + 7) >>> 3);
+	}
+}
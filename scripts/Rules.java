@@ -0,0 +1,623 @@
+package scripts;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Rules interface
+ *
+ * The game rules for one board shape, working on boards stored as long[] of packed 4-bit exponents
+ * (0 = empty, 1 = 2, 2 = 4, ... 15 = 32768; 32768 is the largest block, and two of them never merge).
+ * Each shape uses the fastest layout that fits it:
+ * 	- 4x4 (CLASSIC) is a single long, shifted by the MoveTable row tables (see Board class)
+ * 	- 3x3 and 5x5 up to 8x8 use one long per row, with row tables for up to 5 slots per row and a single pass
+ * 	  over the row for longer rows
+ * 	- the 4x4x4 cube (CUBE) uses one long per 4x4 layer, so every line along any axis is shifted by the
+ * 	  same MoveTable lookups
+ *
+ * Slot (x, y) has index y*size + x, and slot (x, y, z) of the cube has index z*size*size + y*size + x. Methods that produce a board write it into an array given by the caller,
+ * so playing a game allocates nothing.
+ *
+ * @author Kevin1031
+ */
+public interface Rules {
+
+	// Smallest and largest supported board size
+	int MIN_SIZE = 3, MAX_SIZE = 8;
+
+	// The standard 4x4 game
+	Rules CLASSIC = new ClassicRules();
+
+	// The 4x4x4 cube, with in (I) and out (O) shifts along the third axis
+	Rules CUBE = new CubeRules();
+
+
+
+	/**
+	 * Returns the rules for a size x size board
+	 *
+	 * @param size
+	 * @return rules
+	 */
+	static Rules of(int size) {
+		if(size == 4) return CLASSIC;
+		return RowRules.of(size);
+	}
+
+
+
+	// Number of slots along each side of a layer
+	int size();
+
+	// Number of layers; 1 for flat boards
+	default int depth() {
+		return 1;
+	}
+
+	// Number of slots in total
+	int cells();
+
+	// Number of longs a board takes
+	int words();
+
+	// Directions that can be passed to shift()
+	char[] directions();
+
+
+
+	/**
+	 * Shifts the board into the given direction, writing the new board into result
+	 *
+	 * @param board
+	 * @param dir
+	 * @param result array of words() longs, not the same as board
+	 * @return moved
+	 */
+	boolean shift(long[] board, char dir, long[] result);
+
+
+
+	/**
+	 * Writes the blocks that a shift into the given direction would move into events, without changing the board
+	 * Every line along the direction is resolved in a single pass from its destination end, following the same
+	 * rules as shift(); blocks that stay where they are produce no event.
+	 *
+	 * @param board
+	 * @param dir
+	 * @param events
+	 */
+	default void events(long[] board, char dir, MoveEvents events) {
+		int size = size(), area = size * size, step, length = size;
+
+		// Step from one slot of a line to the next one in the direction of the shift
+		switch(dir) {
+		case 'W': step = -size; break;
+		case 'S': step = size; break;
+		case 'A': step = -1; break;
+		case 'D': step = 1; break;
+		case 'O': step = -area; length = depth(); break;
+		case 'I': step = area; length = depth(); break;
+		default: return;
+		}
+		if(length == 1) return;
+
+		int stride = Math.abs(step);
+		for(int cell = 0; cell < cells(); cell++) {
+
+			// Every slot on the destination edge starts a line
+			int position = cell / stride % length;
+			if(position != (step > 0 ? length-1 : 0)) continue;
+
+			int target = cell, last = 0;
+			for(int k = 0, from = cell; k < length; k++, from -= step) {
+				int exponent = get(board, from);
+				if(exponent == 0) continue;
+
+				// Merging into the block placed last, which lies one step back towards the edge
+				if(exponent == last && exponent < 15) {
+					events.addMove(from, target + step, exponent, true);
+					last = 0;
+				} else {
+					if(from != target) events.addMove(from, target, exponent, false);
+					last = exponent;
+					target -= step;
+				}
+			}
+		}
+	}
+
+
+
+	/**
+	 * Checks if any of the directions would change the board
+	 *
+	 * @param board
+	 * @return canMove
+	 */
+	boolean canMove(long[] board);
+
+
+
+	/**
+	 * Returns the exponent in the given slot (0 if empty)
+	 *
+	 * @param board
+	 * @param cell
+	 * @return exponent
+	 */
+	int get(long[] board, int cell);
+
+
+
+	/**
+	 * Replaces the exponent in the given slot
+	 *
+	 * @param board
+	 * @param cell
+	 * @param exponent
+	 */
+	void set(long[] board, int cell, int exponent);
+
+
+
+	/**
+	 * Adds a block at a random empty slot using the spawner's draw
+	 *
+	 * @param board
+	 * @param spawner
+	 * @return slot index of the new block, or -1 if the board is full
+	 */
+	int spawn(long[] board, Spawner spawner);
+
+
+
+	/**
+	 * Searches and returns the block with the highest value on the board
+	 *
+	 * @param board
+	 * @return max
+	 */
+	default int getMax(long[] board) {
+		int max = 0;
+		for(int cell = 0; cell < cells(); cell++) max = Math.max(max, get(board, cell));
+		return Board.toValue(max);
+	}
+}
+
+
+
+
+
+
+/**
+ * ClassicRules class
+ *
+ * Rules for the 4x4 board, stored as a single long and delegated to the Board class.
+ *
+ * @author Kevin1031
+ */
+class ClassicRules implements Rules {
+
+	@Override
+	public int size() {
+		return 4;
+	}
+
+	@Override
+	public int cells() {
+		return 16;
+	}
+
+	@Override
+	public int words() {
+		return 1;
+	}
+
+	@Override
+	public char[] directions() {
+		return Board.DIRECTIONS.clone();
+	}
+
+	@Override
+	public boolean shift(long[] board, char dir, long[] result) {
+		result[0] = Board.shift(board[0], dir);
+		return result[0] != board[0];
+	}
+
+	@Override
+	public boolean canMove(long[] board) {
+		return Board.canMove(board[0]);
+	}
+
+	@Override
+	public int get(long[] board, int cell) {
+		return (int)(board[0] >>> (cell << 2) & Board.CELL_MASK);
+	}
+
+	@Override
+	public void set(long[] board, int cell, int exponent) {
+		board[0] = Board.set(board[0], cell & 3, cell >>> 2, exponent);
+	}
+
+	@Override
+	public int spawn(long[] board, Spawner spawner) {
+		long spawned = spawner.spawn(board[0]);
+		if(spawned == board[0]) return -1;
+
+		// The only slot that differs is the new block
+		int cell = Long.numberOfTrailingZeros(spawned ^ board[0]) >>> 2;
+		board[0] = spawned;
+		return cell;
+	}
+
+	@Override
+	public int getMax(long[] board) {
+		return Board.getMax(board[0]);
+	}
+}
+
+
+
+
+
+
+/**
+ * RowRules class
+ *
+ * Rules for the other board sizes (3x3 and 5x5 up to 8x8). Each row is stored in its own long with x = 0 in the
+ * lowest nibble. Left and right shifts work on each row at once; up and down shifts gather every column
+ * into a row, shift it, and scatter it back. Rows of up to 5 slots are shifted with tables (16^size entries),
+ * which are built when the rules for that size are first requested; longer rows are shifted by Board.shiftRow,
+ * which also fills the tables.
+ *
+ * @author Kevin1031
+ */
+class RowRules implements Rules {
+
+	private static final RowRules[] INSTANCES = new RowRules[Rules.MAX_SIZE + 1];
+
+	// Largest size whose rows are shifted with tables
+	private static final int MAX_TABLE_SIZE = 5;
+
+	private final int size;
+
+	// Mask with the lowest bit of every slot of a row set
+	private final long lowBits;
+
+	// Shifted rows, indexed by the original row; null if rows are too long for tables
+	private final int[] left, right;
+
+
+
+	/**
+	 * Returns the shared rules for the given size, creating them on first use
+	 *
+	 * @param size
+	 * @return rules
+	 */
+	static synchronized RowRules of(int size) {
+		if(size < Rules.MIN_SIZE || size > Rules.MAX_SIZE || size == 4)
+			throw new IllegalArgumentException("Board size must be between " + Rules.MIN_SIZE + " and " + Rules.MAX_SIZE + ": " + size);
+		if(INSTANCES[size] == null) INSTANCES[size] = new RowRules(size);
+		return INSTANCES[size];
+	}
+
+	private RowRules(int size) {
+		this.size = size;
+		this.lowBits = 0x1111111111111111L & ((1L << (size << 2)) - 1);
+
+		if(size <= MAX_TABLE_SIZE) {
+			left = new int[1 << (size << 2)];
+			right = new int[left.length];
+			for(int row = 0; row < left.length; row++) {
+				left[row] = (int)Board.shiftRow(row, size, false);
+				right[row] = (int)Board.shiftRow(row, size, true);
+			}
+		} else {
+			left = right = null;
+		}
+	}
+
+
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int cells() {
+		return size * size;
+	}
+
+	@Override
+	public int words() {
+		return size;
+	}
+
+	@Override
+	public char[] directions() {
+		return Board.DIRECTIONS.clone();
+	}
+
+
+
+	@Override
+	public boolean shift(long[] board, char dir, long[] result) {
+		boolean moved = false;
+
+		switch(dir) {
+
+		// LEFT / RIGHT: every row on its own
+		// A row of 8 slots fills the whole int, so it must not be sign-extended when stored back
+		case 'A':
+		case 'D':
+			for(int y = 0; y < size; y++) {
+				result[y] = shiftRow((int)board[y], dir == 'A') & 0xFFFFFFFFL;
+				moved |= result[y] != board[y];
+			}
+			return moved;
+
+		// UP / DOWN: every column is gathered into a row (y = 0 in the lowest nibble), shifted, and scattered back
+		case 'W':
+		case 'S':
+			Arrays.fill(result, 0, size, 0);
+			for(int x = 0; x < size; x++) {
+				int shift = x << 2, column = 0;
+				for(int y = 0; y < size; y++) column |= (int)(board[y] >>> shift & 0xF) << (y << 2);
+
+				int shifted = left == null ? (int)Board.shiftRow(column, size, dir == 'S') : dir == 'W' ? left[column] : right[column];
+				moved |= shifted != column;
+				for(int y = 0; y < size; y++) result[y] |= (long)(shifted >>> (y << 2) & 0xF) << shift;
+			}
+			return moved;
+		}
+
+		System.arraycopy(board, 0, result, 0, size);
+		return false;
+	}
+
+
+
+	/**
+	 * Shifts a row towards its lowest (or highest) nibble, by table if there is one (see Board.shiftRow)
+	 *
+	 * @param row
+	 * @param towardsLow
+	 * @return row
+	 */
+	private int shiftRow(int row, boolean towardsLow) {
+		if(left != null) return towardsLow ? left[row] : right[row];
+		return (int)Board.shiftRow(row, size, !towardsLow);
+	}
+
+
+
+	@Override
+	public boolean canMove(long[] board) {
+		for(int y = 0; y < size; y++) {
+			for(int x = 0; x < size; x++) {
+				int value = (int)(board[y] >>> (x << 2) & 0xF);
+				if(value == 0) return true;
+				if(value == 15) continue;
+				if(x < size-1 && value == (int)(board[y] >>> ((x+1) << 2) & 0xF)) return true;
+				if(y < size-1 && value == (int)(board[y+1] >>> (x << 2) & 0xF)) return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int getMax(long[] board) {
+		int max = 0;
+		for(int y = 0; y < size; y++) {
+			for(long row = board[y]; row != 0; row >>>= 4) max = Math.max(max, (int)(row & 0xF));
+		}
+		return Board.toValue(max);
+	}
+
+	@Override
+	public int get(long[] board, int cell) {
+		return (int)(board[cell / size] >>> ((cell % size) << 2) & 0xF);
+	}
+
+	@Override
+	public void set(long[] board, int cell, int exponent) {
+		int y = cell / size, shift = (cell % size) << 2;
+		board[y] = board[y] & ~(0xFL << shift) | ((long)exponent & 0xF) << shift;
+	}
+
+
+
+	@Override
+	public int spawn(long[] board, Spawner spawner) {
+		int count = 0;
+		for(int y = 0; y < size; y++) count += Long.bitCount(emptyMask(board[y]));
+		if(count == 0) return -1;
+
+		int draw = spawner.draw(count);
+		int n = draw >>> 1, exponent = (draw & 1) + 1;
+
+		// Finding the row holding the n-th empty slot, then the slot within it
+		for(int y = 0; y < size; y++) {
+			long empty = emptyMask(board[y]);
+			int inRow = Long.bitCount(empty);
+			if(n >= inRow) {
+				n -= inRow;
+				continue;
+			}
+
+			for(; n > 0; n--) empty &= empty - 1;
+			int shift = Long.numberOfTrailingZeros(empty);
+			board[y] |= (long)exponent << shift;
+			return y * size + (shift >>> 2);
+		}
+		return -1;
+	}
+
+	private long emptyMask(long row) {
+		long x = row | row >>> 1;
+		x |= x >>> 2;
+		return ~x & lowBits;
+	}
+}
+
+
+
+
+
+
+
+/**
+ * CubeRules class
+ *
+ * Rules for the 4x4x4 cube. Layer z is stored in board[z] as a classic 4x4 board (see Board class), so the
+ * four directions within a layer (W, A, S, D) are plain Board shifts of each layer.
+ * For in (I, towards the last layer) and out (O, towards layer 0), row y of all four layers is gathered into
+ * one 4x4 board whose rows are the layers; its columns are then exactly the lines along z, and shifting it
+ * down or up with the row tables moves all four of those lines in one step.
+ *
+ * @author Kevin1031
+ */
+class CubeRules implements Rules {
+
+	private static final char[] DIRECTIONS = {'W', 'A', 'S', 'D', 'I', 'O'};
+
+	@Override
+	public int size() {
+		return 4;
+	}
+
+	@Override
+	public int depth() {
+		return 4;
+	}
+
+	@Override
+	public int cells() {
+		return 64;
+	}
+
+	@Override
+	public int words() {
+		return 4;
+	}
+
+	@Override
+	public char[] directions() {
+		return DIRECTIONS.clone();
+	}
+
+
+
+	@Override
+	public boolean shift(long[] board, char dir, long[] result) {
+		boolean moved = false;
+
+		switch(dir) {
+
+		// Within every layer
+		case 'W':
+		case 'A':
+		case 'S':
+		case 'D':
+			for(int z = 0; z < 4; z++) {
+				result[z] = Board.shift(board[z], dir);
+				moved |= result[z] != board[z];
+			}
+			return moved;
+
+		// Along z: one gathered board per row y
+		case 'I':
+		case 'O':
+			Arrays.fill(result, 0, 4, 0);
+			for(int y = 0; y < 4; y++) {
+				long slice = slice(board, y);
+				long shifted = Board.shift(slice, dir == 'I' ? 'S' : 'W');
+				moved |= shifted != slice;
+				for(int z = 0; z < 4; z++) result[z] |= (shifted >>> (z << 4) & 0xFFFFL) << (y << 4);
+			}
+			return moved;
+		}
+
+		System.arraycopy(board, 0, result, 0, 4);
+		return false;
+	}
+
+
+
+	/**
+	 * Gathers row y of every layer into one 4x4 board, with layer z as its row z
+	 *
+	 * @param board
+	 * @param y
+	 * @return slice
+	 */
+	private static long slice(long[] board, int y) {
+		int shift = y << 4;
+		return (board[0] >>> shift & 0xFFFFL) | (board[1] >>> shift & 0xFFFFL) << 16
+				| (board[2] >>> shift & 0xFFFFL) << 32 | (board[3] >>> shift & 0xFFFFL) << 48;
+	}
+
+
+
+	@Override
+	public boolean canMove(long[] board) {
+
+		// Within the layers, then along z (the slices also repeat the x neighbours, which does no harm)
+		for(int z = 0; z < 4; z++) {
+			if(Board.canMove(board[z])) return true;
+		}
+		for(int y = 0; y < 4; y++) {
+			if(Board.canMove(slice(board, y))) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int getMax(long[] board) {
+		int max = 0;
+		for(int z = 0; z < 4; z++) max = Math.max(max, Board.getMax(board[z]));
+		return max;
+	}
+
+	@Override
+	public int get(long[] board, int cell) {
+		return (int)(board[cell >>> 4] >>> ((cell & 15) << 2) & Board.CELL_MASK);
+	}
+
+	@Override
+	public void set(long[] board, int cell, int exponent) {
+		int z = cell >>> 4;
+		board[z] = Board.set(board[z], cell & 3, (cell >>> 2) & 3, exponent);
+	}
+
+
+
+	@Override
+	public int spawn(long[] board, Spawner spawner) {
+		int count = 0;
+		for(int z = 0; z < 4; z++) count += Board.countEmpty(board[z]);
+		if(count == 0) return -1;
+
+		int draw = spawner.draw(count);
+		int n = draw >>> 1;
+
+		// Finding the layer holding the n-th empty slot, then the slot within it
+		for(int z = 0; z < 4; z++) {
+			long empty = Board.emptyMask(board[z]);
+			int inLayer = Long.bitCount(empty);
+			if(n >= inLayer) {
+				n -= inLayer;
+				continue;
+			}
+
+			for(; n > 0; n--) empty &= empty - 1;
+			int shift = Long.numberOfTrailingZeros(empty);
+			board[z] |= (long)((draw & 1) + 1) << shift;
+			return z << 4 | shift >>> 2;
+		}
+		return -1;
+	}
+}
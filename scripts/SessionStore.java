@@ -0,0 +1,275 @@
+package scripts;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+
+/**
+ * SessionStore class
+ *
+ * Keeps games that are not being played (parked sessions) outside the Java heap, so that millions of them cost
+ * little memory and nothing for the garbage collector. Every game is a fixed-width record in a direct ByteBuffer:
+ * 	id			8 bytes		session id, or the next free slot while the record is free
+ * 	board		8 bytes per word of the rules (see GameState.save)
+ * 	state		8 bytes		spawner state, so a parked game spawns the same blocks when it is played on
+ * 	score		4 bytes
+ * 	touched		4 bytes		seconds since the store was created at which the game was parked
+ * That is 32 bytes for the 4x4 board; the largest tile is not stored, but worked out from the board when the game
+ * is loaded. The buffers are allocated in slabs of SLAB_RECORDS records as the store grows, and the records of
+ * removed games are reused through a free list, so a busy store does not grow past its largest number of games.
+ *
+ * Games are found through an open-addressing table of slots (linear probing, at most half full), which adds
+ * 8 to 16 bytes per game. All methods are synchronized; a game is copied in or out in one call. Loading a game
+ * takes it out of the store, so it can only be continued by one session at a time; that session parks it again
+ * when it ends.
+ *
+ * @author Kevin1031
+ */
+public class SessionStore {
+
+	// Records per slab: 32 MB slabs for the 4x4 board
+	static final int SLAB_BITS = 20, SLAB_RECORDS = 1 << SLAB_BITS;
+
+	private static final int ID = 0, BOARD = 8;
+
+	// Marks an empty entry of the table
+	private static final int EMPTY = -1;
+
+	private final Rules rules;
+	private final int words, recordSize, state, score, touched;
+	private final long created = System.nanoTime();
+
+	private ByteBuffer[] slabs = new ByteBuffer[0];
+
+	// Board words being copied in or out; reused, so parking and loading allocate nothing
+	private final long[] board;
+
+	// Slots of the games, indexed by the hash of their id
+	private int[] table = new int[16];
+
+	// Number of games, number of records ever used, and first record of the free list
+	private int size = 0, used = 0, free = EMPTY;
+
+
+
+	/**
+	 * Creates an empty store for games with the given rules
+	 *
+	 * @param rules
+	 */
+	public SessionStore(Rules rules) {
+		this.rules = rules;
+		this.words = rules.words();
+		this.state = BOARD + 8 * words;
+		this.score = state + 8;
+		this.touched = score + 4;
+		this.recordSize = touched + 4;
+		this.board = new long[words];
+		Arrays.fill(table, EMPTY);
+	}
+
+
+
+	/**
+	 * Stores the game under the given id, replacing any game stored under it before
+	 *
+	 * @param id
+	 * @param game a game with this store's rules
+	 */
+	public synchronized void put(long id, GameState game) {
+		if(game.getRules() != rules) throw new IllegalArgumentException("Store holds " + rules.size() + "x" + rules.size() + " games, not " + game.getRules().size() + "x" + game.getRules().size());
+
+		int entry = find(id);
+		int slot = table[entry];
+		if(slot == EMPTY) {
+			slot = allocate();
+			slabs[slot >>> SLAB_BITS].putLong(offset(slot) + ID, id);
+			table[entry] = slot;
+			size++;
+			if(size * 2 > table.length) grow();
+		}
+
+		ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+		int offset = offset(slot);
+		game.save(board, 0);
+		for(int w = 0; w < words; w++) slab.putLong(offset + BOARD + 8 * w, board[w]);
+		slab.putLong(offset + state, game.getSpawner().getState());
+		slab.putInt(offset + score, game.getScore());
+		slab.putInt(offset + touched, now());
+	}
+
+
+
+	/**
+	 * Puts the game stored under the given id into game and removes it from the store, so that no other caller
+	 * can load it until it is put back
+	 *
+	 * @param id
+	 * @param game a game with this store's rules, e.g. a session's game that is reused
+	 * @return found (false if there is no game with this id; game is not changed then)
+	 */
+	public synchronized boolean load(long id, GameState game) {
+		int entry = find(id);
+		int slot = table[entry];
+		if(slot == EMPTY) return false;
+
+		ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+		int offset = offset(slot);
+		for(int w = 0; w < words; w++) board[w] = slab.getLong(offset + BOARD + 8 * w);
+		game.restore(board, 0, slab.getInt(offset + score));
+		game.getSpawner().setState(slab.getLong(offset + state));
+
+		release(slot);
+		delete(entry);
+		return true;
+	}
+
+
+
+	/**
+	 * Removes the game stored under the given id
+	 *
+	 * @param id
+	 * @return removed (false if there was no game with this id)
+	 */
+	public synchronized boolean remove(long id) {
+		int entry = find(id);
+		int slot = table[entry];
+		if(slot == EMPTY) return false;
+
+		release(slot);
+		delete(entry);
+		return true;
+	}
+
+
+
+	/**
+	 * Removes every game that was parked longer ago than the given number of seconds
+	 * Walks all records, so it is meant to be called now and then, not for every request
+	 *
+	 * @param seconds
+	 * @return number of games removed
+	 */
+	public synchronized int evict(int seconds) {
+		int limit = now() - seconds, removed = 0;
+		for(int slot = 0; slot < used; slot++) {
+			ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+			int offset = offset(slot);
+			if(slab.getInt(offset + touched) >= limit) continue;
+
+			// Free records are marked with a time that is never old enough (see release)
+			remove(slab.getLong(offset + ID));
+			removed++;
+		}
+		return removed;
+	}
+
+
+
+	public synchronized int size() {
+		return size;
+	}
+
+	// Bytes of one record
+	public int recordSize() {
+		return recordSize;
+	}
+
+	// Bytes used by the records and the table, including free records and the empty part of the last slab
+	public synchronized long memory() {
+		long bytes = 4L * table.length;
+		for(ByteBuffer slab : slabs) bytes += slab.capacity();
+		return bytes;
+	}
+
+
+
+	/**
+	 * Returns the table entry of the given id: the entry holding its slot, or the empty entry where it belongs
+	 */
+	private int find(long id) {
+		int mask = table.length - 1;
+		for(int entry = hash(id) & mask; ; entry = (entry + 1) & mask) {
+			int slot = table[entry];
+			if(slot == EMPTY || idOf(slot) == id) return entry;
+		}
+	}
+
+	/**
+	 * Empties an entry of the table, moving later entries of the same probe sequence back into the gap
+	 * (backward shift deletion), so that lookups never need to skip deleted entries
+	 */
+	private void delete(int gap) {
+		int mask = table.length - 1;
+		table[gap] = EMPTY;
+		for(int entry = (gap + 1) & mask; table[entry] != EMPTY; entry = (entry + 1) & mask) {
+			int home = hash(idOf(table[entry])) & mask;
+
+			// The entry can fill the gap if the gap lies between its home and where it is now
+			if(((entry - home) & mask) >= ((entry - gap) & mask)) {
+				table[gap] = table[entry];
+				table[entry] = EMPTY;
+				gap = entry;
+			}
+		}
+		size--;
+	}
+
+	// Doubles the table and puts every slot back in
+	private void grow() {
+		int[] old = table;
+		table = new int[old.length * 2];
+		Arrays.fill(table, EMPTY);
+		for(int slot : old) if(slot != EMPTY) table[find(idOf(slot))] = slot;
+	}
+
+
+
+	/**
+	 * Takes a record from the free list, or the next unused one, adding a slab if all are full
+	 */
+	private int allocate() {
+		if(free != EMPTY) {
+			int slot = free;
+			free = (int)slabs[slot >>> SLAB_BITS].getLong(offset(slot) + ID);
+			return slot;
+		}
+
+		if(used == slabs.length * SLAB_RECORDS) {
+			if(slabs.length == Integer.MAX_VALUE >>> SLAB_BITS) throw new IllegalStateException("Session store is full");
+			slabs = Arrays.copyOf(slabs, slabs.length + 1);
+			slabs[slabs.length - 1] = ByteBuffer.allocateDirect(SLAB_RECORDS * recordSize);
+		}
+		return used++;
+	}
+
+	// Puts a record on the free list
+	private void release(int slot) {
+		ByteBuffer slab = slabs[slot >>> SLAB_BITS];
+		int offset = offset(slot);
+		slab.putLong(offset + ID, free);
+		slab.putInt(offset + touched, Integer.MAX_VALUE);
+		free = slot;
+	}
+
+
+
+	private int offset(int slot) {
+		return (slot & (SLAB_RECORDS - 1)) * recordSize;
+	}
+
+	private long idOf(int slot) {
+		return slabs[slot >>> SLAB_BITS].getLong(offset(slot) + ID);
+	}
+
+	private static int hash(long id) {
+		return (int)(Spawner.mix(id) >>> 32);
+	}
+
+	// Seconds since the store was created
+	private int now() {
+		return (int)((System.nanoTime() - created) / 1000000000L);
+	}
+}
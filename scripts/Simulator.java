@@ -0,0 +1,316 @@
+package scripts;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+
+
+/**
+ * Simulator class
+ *
+ * Command-line tool that plays many complete games without the GUI and reports how well a MovePolicy does.
+ * Games are split into batches that run in parallel on a ForkJoinPool; every batch has its own policy
+ * instance and every game its own GameState, and results are written into per-game slots of result arrays,
+ * so the threads share nothing while playing.
+ *
+ * Every game gets its own Spawner with a seed derived from the simulator's seed and the game's number,
+ * so a run is reproduced exactly from its seed regardless of the number of threads.
+ * Boards from 3x3 to 8x8 and the 4x4x4 cube can be simulated with the random, corner and montecarlo policies;
+ * expectimax and ntuple only support 4x4.
+ * With -replay, every game is also recorded into a replay file (see ReplayWriter), in the order the games end.
+ * With -table, all expectimax players share one transposition table of that many megabytes (see TranspositionTable)
+ * instead of each having its own, aged once per game rather than by every move of every player; scores then depend on which thread evaluated a board first, so such a run is
+ * not reproduced exactly from its seed.
+ *
+ * Usage:
+ * 		java scripts.Simulator [-games N] [-threads T] [-policy random|corner|expectimax|montecarlo|ntuple|<class name>] [-seed S] [-four P] [-size N | -cube] [-replay FILE] [-table MB]
+ *
+ * @author Kevin1031
+ */
+public class Simulator {
+
+	// Number of valid moves (score) and largest tile of every game, indexed by game number
+	private final int[] scores, maxes;
+
+	// Seed of every game's spawner, indexed by game number
+	private final long[] seeds;
+
+	// Probability that a new block is a 4
+	private final double fourProbability;
+
+	// Rules of the board's shape
+	private final Rules rules;
+
+	private final Supplier<MovePolicy> policy;
+
+	// Directions in a row that did not move the board, after which a policy is taken to be stuck
+	static final int MAX_STALLS = 64;
+
+	// Records every game when set
+	ReplayWriter replays;
+
+	// Table shared by all expectimax players when set; aged once per game played
+	TranspositionTable table;
+
+	// One of the policy instances, kept for printing its report
+	private final AtomicReference<MovePolicy> sample = new AtomicReference<MovePolicy>();
+
+
+
+	/**
+	 * Creates a simulator for the given number of games
+	 *
+	 * @param games
+	 * @param policy creates a new policy instance for every batch of games
+	 * @param seed
+	 * @param fourProbability
+	 * @param rules
+	 */
+	Simulator(int games, Supplier<MovePolicy> policy, long seed, double fourProbability, Rules rules) {
+		this.scores = new int[games];
+		this.maxes = new int[games];
+		this.seeds = new long[games];
+		this.fourProbability = fourProbability;
+		this.rules = rules;
+		this.policy = policy;
+
+		Spawner root = new Spawner(seed);
+		for(int i = 0; i < games; i++) seeds[i] = root.nextLong();
+	}
+
+
+
+	/**
+	 * Main Method
+	 * Parses the arguments, plays the games and prints the report
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int games = 1000, threads = Runtime.getRuntime().availableProcessors();
+		String policyName = "random";
+		long seed = System.nanoTime();
+		double fourProbability = Spawner.DEFAULT_FOUR_PROBABILITY;
+		Rules rules = Rules.CLASSIC;
+		String replayFile = null;
+		int tableMegabytes = 0;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				switch(args[i]) {
+				case "-games": games = Integer.parseInt(args[++i]); break;
+				case "-threads": threads = Integer.parseInt(args[++i]); break;
+				case "-policy": policyName = args[++i]; break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				case "-four": fourProbability = Double.parseDouble(args[++i]); break;
+				case "-size": rules = Rules.of(Integer.parseInt(args[++i])); break;
+				case "-cube": rules = Rules.CUBE; break;
+				case "-replay": replayFile = args[++i]; break;
+				case "-table": tableMegabytes = Integer.parseInt(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+				}
+			}
+
+			Supplier<MovePolicy> policy = policy(policyName, fourProbability);
+			TranspositionTable table = null;
+			if(tableMegabytes > 0) {
+				if(!policyName.equals("expectimax")) throw new IllegalArgumentException("-table only applies to the expectimax policy");
+				table = new TranspositionTable(tableMegabytes);
+				TranspositionTable shared = table;
+				double four = fourProbability;
+				policy = () -> new Expectimax(shared, four);
+			}
+
+			Simulator simulator = new Simulator(games, policy, seed, fourProbability, rules);
+			simulator.table = table;
+			if(replayFile != null) simulator.replays = new ReplayWriter(Paths.get(replayFile));
+			long start = System.nanoTime();
+			simulator.run(threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			if(replayFile != null) simulator.replays.close();
+
+			String shape = rules.size() + "x" + rules.size() + (rules.depth() > 1 ? "x" + rules.depth() : "");
+			System.out.printf("Played %d games on %s with policy '%s' on %d threads in %.3f s (seed %d)%n", games, shape, policyName, threads, seconds, seed);
+			simulator.report(seconds);
+			if(replayFile != null) System.out.println("Replays written to " + replayFile);
+
+		} catch(IOException | RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java scripts.Simulator [-games N] [-threads T] [-policy random|corner|expectimax|montecarlo|ntuple|<class name>] [-seed S] [-four P] [-size N | -cube] [-replay FILE] [-table MB]");
+			System.exit(1);
+		}
+	}
+
+
+
+	/**
+	 * Returns a factory for the policy with the given name, for games with the default probability of 4s
+	 *
+	 * @param name
+	 * @return policy
+	 */
+	static Supplier<MovePolicy> policy(String name) {
+		return policy(name, Spawner.DEFAULT_FOUR_PROBABILITY);
+	}
+
+
+
+	/**
+	 * Returns a factory for the policy with the given name
+	 * "random", "corner", "expectimax", "montecarlo" and "ntuple" are built in; anything else is loaded as a class implementing MovePolicy
+	 *
+	 * @param name
+	 * @param fourProbability probability that a new block is a 4 in the games played, for policies that search
+	 *        over the new blocks
+	 * @return policy
+	 */
+	static Supplier<MovePolicy> policy(String name, double fourProbability) {
+		switch(name) {
+		case "random": return RandomPolicy::new;
+		case "corner": return CornerPolicy::new;
+		case "expectimax": return () -> new Expectimax(null, fourProbability);
+		case "montecarlo": return MonteCarlo::new;
+		case "ntuple": return NTuplePolicy::new;
+		}
+
+		try {
+			Constructor<? extends MovePolicy> constructor = Class.forName(name).asSubclass(MovePolicy.class).getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return () -> {
+				try {
+					return constructor.newInstance();
+				} catch(ReflectiveOperationException e) {
+					throw new IllegalStateException("Could not create policy " + name, e);
+				}
+			};
+		} catch(ClassNotFoundException | ClassCastException | NoSuchMethodException e) {
+			throw new IllegalArgumentException("Unknown policy: " + name + " (" + e + ")");
+		}
+	}
+
+
+
+	/**
+	 * Plays all games, splitting them between the given number of threads
+	 *
+	 * @param threads
+	 */
+	void run(int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			int batch = Math.max(1, scores.length / (threads * 8));
+			pool.invoke(new Batch(0, scores.length, batch));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+
+	/**
+	 * Plays a single game from start until no valid moves are left and stores its results
+	 * Fails if the policy is stuck, choosing directions that do not move the board while other directions would
+	 *
+	 * @param index
+	 * @param policy
+	 * @param recorder null if games are not recorded
+	 */
+	void play(int index, MovePolicy policy, ReplayRecorder recorder) {
+		GameState game = new GameState(rules, new Spawner(seeds[index], fourProbability));
+		game.setRecorder(recorder);
+		game.reset();
+		int stalls = 0;
+		while(!game.isOver()) {
+			if(game.move(policy.nextMove(game))) stalls = 0;
+			else if(!game.isOver() && ++stalls == MAX_STALLS) {
+				throw new IllegalStateException("Policy " + policy.getClass().getName() + " chose " + MAX_STALLS + " directions in a row that did not move the board");
+			}
+		}
+		if(table != null) table.newSearch();
+
+		scores[index] = game.getScore();
+		maxes[index] = game.getMax();
+	}
+
+
+
+	/**
+	 * Prints throughput and the distributions of score and largest tile
+	 *
+	 * @param seconds
+	 */
+	void report(double seconds) {
+		int games = scores.length;
+		if(games == 0) return;
+
+		long moves = 0;
+		for(int score : scores) moves += score;
+
+		System.out.printf("Games/sec: %.1f%n", games / seconds);
+		System.out.printf("Moves/sec: %.1f%n", moves / seconds);
+
+		// Score distribution
+		int[] sorted = scores.clone();
+		Arrays.sort(sorted);
+		System.out.printf("Score: min %d, mean %.1f, median %d, p90 %d, p99 %d, max %d%n",
+				sorted[0], moves / (double)games, sorted[games/2], sorted[(int)(games*0.9)], sorted[(int)(games*0.99)], sorted[games-1]);
+
+		// Largest tile distribution; counted by exponent
+		int[] count = new int[32];
+		for(int max : maxes) count[Board.toExponent(max)]++;
+
+		System.out.println("Largest tile:    games   share   reached");
+		int reached = games;
+		for(int exponent = 0; exponent < count.length; exponent++) {
+			if(count[exponent] > 0) {
+				System.out.printf("%12d %8d %6.2f%% %8.2f%%%n", Board.toValue(exponent), count[exponent],
+						100.0 * count[exponent] / games, 100.0 * reached / games);
+			}
+			reached -= count[exponent];
+		}
+
+		MovePolicy instance = sample.get();
+		String policyReport = instance == null ? null : instance.report();
+		if(policyReport != null) System.out.println(policyReport);
+	}
+
+
+
+	/**
+	 * Batch class
+	 *
+	 * Fork-join task playing the games with index from (inclusive) to (exclusive).
+	 * Ranges larger than the batch size are split in half and played in parallel.
+	 */
+	private class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final int from, to, size;
+
+		Batch(int from, int to, int size) {
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > size) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Batch(from, middle, size), new Batch(middle, to, size));
+				return;
+			}
+
+			MovePolicy instance = policy.get();
+			sample.compareAndSet(null, instance);
+			ReplayRecorder recorder = replays == null ? null : new ReplayRecorder(replays);
+			for(int i = from; i < to; i++) play(i, instance, recorder);
+		}
+	}
+}
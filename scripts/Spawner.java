@@ -0,0 +1,174 @@
+package scripts;
+
+
+
+/**
+ * Spawner class
+ *
+ * Places new random blocks on a packed board (see Board class).
+ * Each Spawner has its own random number generator (SplitMix64, the same algorithm as
+ * java.util.SplittableRandom), so games never share a generator between threads and a game started from a
+ * given seed is reproduced exactly. Unlike SplittableRandom, the generator's state can be read and restored,
+ * so a game can be saved and resumed with the same upcoming blocks.
+ *
+ * A spawn takes a single random draw: the empty slots are found with bit operations on the board, and one
+ * number decides both which of them is used and whether the block is a 2 or a 4. Nothing is allocated.
+ *
+ * @author Kevin1031
+ */
+public class Spawner {
+
+	// Probability that a new block is a 4 instead of a 2; this is what Grid.addRandomBlock has always used
+	public static final double DEFAULT_FOUR_PROBABILITY = 0.25;
+
+	// Odd constant added to the state on every draw (the golden ratio), as in SplittableRandom
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Resolution of the 2-or-4 decision; a draw is split into an empty slot index and a number below this
+	private static final int VALUE_RANGE = 1 << 16;
+
+	private long state;
+
+	// A new block is a 4 if its part of the draw is below this threshold
+	private final int fourThreshold;
+
+
+
+	/**
+	 * Creates a spawner with the default 2-or-4 probability
+	 *
+	 * @param seed
+	 */
+	public Spawner(long seed) {
+		this(seed, DEFAULT_FOUR_PROBABILITY);
+	}
+
+
+
+	/**
+	 * Creates a spawner
+	 *
+	 * @param seed
+	 * @param fourProbability probability (0 to 1) that a new block is a 4 instead of a 2
+	 */
+	public Spawner(long seed, double fourProbability) {
+		if(!(fourProbability >= 0 && fourProbability <= 1))
+			throw new IllegalArgumentException("Probability must be between 0 and 1: " + fourProbability);
+		this.state = seed;
+		this.fourThreshold = (int)Math.round(fourProbability * VALUE_RANGE);
+	}
+
+
+
+	/**
+	 * Creates a new spawner with an independent random stream, advancing this one
+	 * The new spawner is fully determined by the state of this one, so splitting is reproducible too
+	 *
+	 * @return spawner
+	 */
+	public Spawner split() {
+		return new Spawner(nextLong(), getFourProbability());
+	}
+
+
+
+	/**
+	 * Creates a new spawner in the same state as this one; both will make the same draws from now on
+	 *
+	 * @return spawner
+	 */
+	public Spawner copy() {
+		return new Spawner(state, getFourProbability());
+	}
+
+
+
+	/**
+	 * Adds a 2 or a 4 at a random empty slot
+	 * Returns the board unchanged if there are no empty slots
+	 *
+	 * @param board
+	 * @return board
+	 */
+	public long spawn(long board) {
+		long empty = Board.emptyMask(board);
+		int count = Long.bitCount(empty);
+		if(count == 0) return board;
+
+		int draw = draw(count);
+
+		// Removing the lowest set bits until the chosen one is the lowest
+		for(int n = draw >>> 1; n > 0; n--) empty &= empty - 1;
+		return board | (long)((draw & 1) + 1) << Long.numberOfTrailingZeros(empty);
+	}
+
+
+
+	/**
+	 * Makes the single draw for a new block: which of the empty slots it goes into, and whether it is a 4
+	 * Used by spawn() and by the Rules of other board shapes, which find their empty slots themselves
+	 *
+	 * @param empty number of empty slots (at least 1)
+	 * @return index of the chosen empty slot * 2, plus 1 if the block is a 4
+	 */
+	public int draw(int empty) {
+		int r = nextInt(empty * VALUE_RANGE);
+		return (r / VALUE_RANGE) << 1 | ((r & (VALUE_RANGE-1)) < fourThreshold ? 1 : 0);
+	}
+
+
+
+	/**
+	 * Returns a uniformly distributed number from 0 (inclusive) to bound (exclusive)
+	 *
+	 * @param bound
+	 * @return number
+	 */
+	public int nextInt(int bound) {
+		return (int)(((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+
+
+	/**
+	 * Returns the next 64 random bits
+	 *
+	 * @return number
+	 */
+	public long nextLong() {
+		return mix(state += GAMMA);
+	}
+
+
+
+	/**
+	 * Scrambles the bits of the state (the finalizer of the MurmurHash3 variant used by SplittableRandom)
+	 *
+	 * @param z
+	 * @return mixed
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+
+	/**
+	 * Returns the generator's state; passing it to setState later repeats the same draws
+	 *
+	 * @return state
+	 */
+	public long getState() {
+		return state;
+	}
+
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	public double getFourProbability() {
+		return fourThreshold / (double)VALUE_RANGE;
+	}
+}
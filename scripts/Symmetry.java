@@ -0,0 +1,162 @@
+package scripts;
+
+
+
+/**
+ * Symmetry class
+ *
+ * The 8 rotations and reflections of the packed 4x4 board (see Board class), and how they map the directions.
+ * Symmetry t (0 to 7) transposes the board if bit 2 is set, then mirrors it top to bottom if bit 1 is set and
+ * left to right if bit 0 is set. Moving a board and then transforming it gives the same board as transforming it
+ * and then moving it into the transformed direction:
+ * 		apply(Board.shift(board, dir), t) == Board.shift(apply(board, t), direction(dir, t))
+ *
+ * Boards that are rotations or reflections of each other play the same, so caches and tables can store one of
+ * them for all 8: canonical() picks the smallest of the 8 transformed boards as their key, and canonicalSymmetry()
+ * says which symmetry produced it, to map directions between the board and its key:
+ * 		int t = Symmetry.canonicalSymmetry(board);
+ * 		char dir = Symmetry.direction(bestMoveOf(Symmetry.apply(board, t)), Symmetry.inverse(t));
+ *
+ * @author Kevin1031
+ */
+public class Symmetry {
+
+	// Number of symmetries; 0 is the identity
+	public static final int COUNT = 8;
+
+	// Symmetry that undoes each symmetry
+	private static final int[] INVERSE = new int[COUNT];
+
+	// Direction each direction becomes under each symmetry, indexed by [symmetry][dir]
+	private static final char[][] DIRECTIONS = new char[COUNT]['W' + 1];
+
+	static {
+		for(int t = 0; t < COUNT; t++) {
+			for(char dir : Board.DIRECTIONS) {
+				char mapped = dir;
+				if((t & 4) != 0) mapped = mapped == 'W' ? 'A' : mapped == 'A' ? 'W' : mapped == 'S' ? 'D' : 'S';
+				if((t & 2) != 0 && (mapped == 'W' || mapped == 'S')) mapped = mapped == 'W' ? 'S' : 'W';
+				if((t & 1) != 0 && (mapped == 'A' || mapped == 'D')) mapped = mapped == 'A' ? 'D' : 'A';
+				DIRECTIONS[t][dir] = mapped;
+			}
+
+			// A board whose 16 slots all differ is only mapped back to itself by the inverse
+			long board = 0xFEDCBA9876543210L;
+			for(int u = 0; u < COUNT; u++) if(apply(apply(board, t), u) == board) INVERSE[t] = u;
+		}
+	}
+
+
+
+	/**
+	 * Returns the board transformed by the given symmetry
+	 *
+	 * @param board
+	 * @param t symmetry (0 to 7)
+	 * @return board
+	 */
+	public static long apply(long board, int t) {
+		if((t & 4) != 0) board = MoveTable.transpose(board);
+		if((t & 2) != 0) board = flipVertical(board);
+		if((t & 1) != 0) board = flipHorizontal(board);
+		return board;
+	}
+
+
+
+	/**
+	 * Returns the direction that the given direction becomes when the board is transformed by the symmetry
+	 *
+	 * @param dir W, A, S or D
+	 * @param t symmetry (0 to 7)
+	 * @return dir
+	 */
+	public static char direction(char dir, int t) {
+		return DIRECTIONS[t][dir];
+	}
+
+	/**
+	 * Returns the symmetry that undoes the given one
+	 *
+	 * @param t
+	 * @return inverse
+	 */
+	public static int inverse(int t) {
+		return INVERSE[t];
+	}
+
+
+
+	/**
+	 * Returns the same board for all 8 rotations and reflections of a board: the smallest of them (unsigned)
+	 *
+	 * @param board
+	 * @return canonical board
+	 */
+	public static long canonical(long board) {
+		long transposed = MoveTable.transpose(board), min = board;
+		min = smaller(min, flipHorizontal(board));
+		long flipped = flipVertical(board);
+		min = smaller(min, flipped);
+		min = smaller(min, flipHorizontal(flipped));
+		min = smaller(min, transposed);
+		min = smaller(min, flipHorizontal(transposed));
+		flipped = flipVertical(transposed);
+		min = smaller(min, flipped);
+		return smaller(min, flipHorizontal(flipped));
+	}
+
+
+
+	/**
+	 * Returns the symmetry that turns the board into canonical(board)
+	 * If several do (the board is symmetric itself), the lowest of them
+	 *
+	 * @param board
+	 * @return symmetry (0 to 7)
+	 */
+	public static int canonicalSymmetry(long board) {
+		int best = 0;
+		long min = board;
+		for(int t = 1; t < COUNT; t++) {
+			long transformed = apply(board, t);
+			if(Long.compareUnsigned(transformed, min) < 0) {
+				min = transformed;
+				best = t;
+			}
+		}
+		return best;
+	}
+
+
+
+	/**
+	 * Mirrors the board left to right by reversing the nibbles of every row
+	 *
+	 * @param board
+	 * @return board
+	 */
+	public static long flipHorizontal(long board) {
+		board = (board & 0x0F0F0F0F0F0F0F0FL) << 4 | (board >>> 4 & 0x0F0F0F0F0F0F0F0FL);
+		return (board & 0x00FF00FF00FF00FFL) << 8 | (board >>> 8 & 0x00FF00FF00FF00FFL);
+	}
+
+
+
+	/**
+	 * Mirrors the board top to bottom by reversing the order of the rows
+	 *
+	 * @param board
+	 * @return board
+	 */
+	public static long flipVertical(long board) {
+		board = Long.reverseBytes(board);
+		return (board & 0x00FF00FF00FF00FFL) << 8 | (board >>> 8 & 0x00FF00FF00FF00FFL);
+	}
+
+
+
+	private static long smaller(long a, long b) {
+		return Long.compareUnsigned(a, b) <= 0 ? a : b;
+	}
+}
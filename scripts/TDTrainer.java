@@ -0,0 +1,176 @@
+package scripts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * TDTrainer class
+ *
+ * Command-line tool that trains an NTupleNetwork by playing games against itself.
+ * Moves are chosen greedily by NTuplePolicy, and after every move the value of the previous shifted board
+ * ("afterstate") is pulled towards the merge score gained plus the value of the new afterstate; this is
+ * temporal-difference learning, TD(0), on afterstates.
+ *
+ * Several threads train the same network at once without locks (Hogwild-style). Each thread has its own
+ * Spawner split from the seed. Every interval the main thread prints progress (episodes/sec, average score)
+ * and saves a checkpoint of the weights.
+ *
+ * Usage:
+ * 		java scripts.TDTrainer [-weights FILE] [-episodes N] [-threads T] [-alpha A] [-interval SECONDS] [-seed S]
+ * -episodes 0 trains until the program is stopped.
+ *
+ * @author Kevin1031
+ */
+public class TDTrainer {
+
+	private final NTupleNetwork network;
+	private final float alpha;
+
+	// Episodes left to play, unless the trainer runs until stopped
+	private final AtomicLong remaining;
+	private final boolean unlimited;
+
+	// Totals for progress reports
+	private final LongAdder episodes = new LongAdder(), points = new LongAdder(), reached2048 = new LongAdder();
+
+
+
+	TDTrainer(NTupleNetwork network, float alpha, long episodes) {
+		this.network = network;
+		this.alpha = alpha;
+		this.remaining = new AtomicLong(episodes);
+		this.unlimited = episodes <= 0;
+	}
+
+
+
+	/**
+	 * Main Method
+	 * Parses the arguments, then trains until the number of episodes is reached, saving a checkpoint every interval
+	 *
+	 * @param args
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path weights = Path.of("ntuple.weights");
+		long episodeCount = 100000, seed = System.nanoTime();
+		int threads = Runtime.getRuntime().availableProcessors(), interval = 30;
+		float alpha = 0.1f;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				switch(args[i]) {
+				case "-weights": weights = Path.of(args[++i]); break;
+				case "-episodes": episodeCount = Long.parseLong(args[++i]); break;
+				case "-threads": threads = Integer.parseInt(args[++i]); break;
+				case "-alpha": alpha = Float.parseFloat(args[++i]); break;
+				case "-interval": interval = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+				}
+			}
+		} catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java scripts.TDTrainer [-weights FILE] [-episodes N] [-threads T] [-alpha A] [-interval SECONDS] [-seed S]");
+			System.exit(1);
+		}
+
+		// Continuing from an earlier checkpoint if there is one
+		NTupleNetwork network = Files.exists(weights) ? NTupleNetwork.load(weights) : new NTupleNetwork();
+		TDTrainer trainer = new TDTrainer(network, alpha, episodeCount);
+
+		Spawner root = new Spawner(seed);
+		Thread[] workers = new Thread[threads];
+		for(int i = 0; i < threads; i++) {
+			Spawner spawner = root.split();
+			workers[i] = new Thread(() -> trainer.train(spawner), "TDTrainer-" + i);
+			workers[i].start();
+		}
+
+		// Reporting and checkpointing until all workers are done
+		long start = System.nanoTime(), lastTime = start, lastEpisodes = 0, lastPoints = 0, last2048 = 0;
+		boolean running = true;
+		while(running) {
+			running = false;
+			for(Thread worker : workers) {
+				worker.join(interval * 1000L);
+				if(worker.isAlive()) {
+					running = true;
+					break;
+				}
+			}
+
+			long now = System.nanoTime(), done = trainer.episodes.sum(), total = trainer.points.sum(), wins = trainer.reached2048.sum();
+			long played = done - lastEpisodes;
+			if(played > 0) {
+				Log.info(String.format("Episodes: %d (%.1f/sec). Last %d: average merge score %.0f, reached 2048 %.1f%%.",
+						done, played / ((now - lastTime) / 1e9), played, (total - lastPoints) / (double)played, 100.0 * (wins - last2048) / played));
+			}
+			lastTime = now;
+			lastEpisodes = done;
+			lastPoints = total;
+			last2048 = wins;
+
+			network.save(weights);
+		}
+
+		Log.info(String.format("Trained %d episodes in %.1f s. Weights saved to %s.", trainer.episodes.sum(), (System.nanoTime() - start) / 1e9, weights));
+	}
+
+
+
+	/**
+	 * Plays episodes until none are left
+	 *
+	 * @param spawner
+	 */
+	void train(Spawner spawner) {
+		while(unlimited || remaining.getAndDecrement() > 0) playEpisode(spawner);
+	}
+
+
+
+	/**
+	 * Plays one game, updating the network after every move
+	 *
+	 * @param spawner
+	 */
+	void playEpisode(Spawner spawner) {
+		long board = Board.EMPTY;
+		for(int i = 0; i < 4; i++) board = spawner.spawn(board);
+
+		long previous = 0;
+		boolean first = true;
+		int total = 0;
+
+		while(true) {
+			char dir = NTuplePolicy.bestMove(network, board);
+
+			// Game over: the last afterstate is worth nothing more
+			if(dir == NTuplePolicy.NO_MOVE) {
+				if(!first) network.update(previous, alpha * -network.value(previous));
+				break;
+			}
+
+			long after = Board.shift(board, dir);
+			int reward = MoveTable.score(board, dir);
+			total += reward;
+
+			if(!first) network.update(previous, alpha * (reward + network.value(after) - network.value(previous)));
+			previous = after;
+			first = false;
+
+			board = spawner.spawn(after);
+		}
+
+		episodes.increment();
+		points.add(total);
+		if(Board.getMax(board) >= 2048) reached2048.increment();
+	}
+}
@@ -0,0 +1,191 @@
+package scripts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * TranspositionTable class
+ *
+ * Fixed-size table of evaluated positions for search-based players such as Expectimax, which any number of
+ * search threads can share without locks. Every entry takes two longs of one flat long[]:
+ * 	key ^ data		the board, XORed with the data
+ * 	data			score (float bits, 32 bits), depth (8 bits), age (15 bits) and a bit marking the entry as used
+ * Threads read and write entries without any synchronization. An entry that is read while another thread writes
+ * it may mix the two writes, but then key ^ data no longer gives back the board being looked up, so it counts as
+ * a miss instead of returning a wrong score ("lockless hashing").
+ *
+ * Entries are grouped into buckets of BUCKET entries (one 64-byte cache line). A board can be stored in any entry
+ * of its bucket; a new one replaces the entry of the same board if there is one, and otherwise the entry worth
+ * least: one left from an earlier search (see newSearch()) before one of the current search, and the one searched
+ * least deep among those. An entry of the current search is only replaced by the same board if it was searched
+ * less deep.
+ *
+ * The age is advanced by whoever owns the table, once per round of searches (e.g. once per game when many
+ * players share it), never by each search on its own. It only decides which entries are replaced first, so an
+ * entry left untouched for 2^15 ages that looks current again after the age wraps around is harmless.
+ *
+ * @author Kevin1031
+ */
+public class TranspositionTable {
+
+	// Entries per bucket; a bucket is 8 longs, one cache line
+	static final int BUCKET = 4;
+
+	private static final long USED = 1L << 63;
+
+	private final long[] entries;
+	private final int bucketMask;
+
+	// Number of bits of the age in an entry
+	private static final int AGE_BITS = 15;
+	private static final int AGE_MASK = (1 << AGE_BITS) - 1;
+
+	// Age of the current round of searches; entries of other ages are replaced first
+	private final AtomicInteger age = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), collisions = new LongAdder();
+
+
+
+	/**
+	 * Creates a table of at most the given size
+	 *
+	 * @param megabytes memory used; rounded down to a power of two, at least one bucket
+	 */
+	public TranspositionTable(int megabytes) {
+		if(megabytes < 1) throw new IllegalArgumentException("Table size must be at least 1 MB: " + megabytes);
+		long buckets = Long.highestOneBit(((long)megabytes << 20) / (BUCKET * 16));
+		if(buckets * BUCKET * 2 > Integer.MAX_VALUE - 8) buckets = 1 << 27;
+		entries = new long[(int)buckets * BUCKET * 2];
+		bucketMask = (int)buckets - 1;
+	}
+
+
+
+	/**
+	 * Looks up the score of a board that was searched at least the given depth
+	 *
+	 * @param board
+	 * @param depth
+	 * @return score, or NaN if the board is not in the table or was searched less deep
+	 */
+	public float probe(long board, int depth) {
+		int base = bucket(board);
+		for(int i = base; i < base + BUCKET * 2; i += 2) {
+			long data = entries[i + 1];
+			if((entries[i] ^ data) != board || (data & USED) == 0) continue;
+
+			if((int)(data >>> 32 & 0xFF) >= depth) {
+				hits.increment();
+				return Float.intBitsToFloat((int)data);
+			}
+			break;
+		}
+		misses.increment();
+		return Float.NaN;
+	}
+
+
+
+	/**
+	 * Stores the score of a board searched to the given depth
+	 *
+	 * @param board
+	 * @param depth at most 255
+	 * @param score
+	 */
+	public void store(long board, int depth, float score) {
+		int base = bucket(board), current = age.get() & AGE_MASK, victim = base, worth = Integer.MAX_VALUE;
+		for(int i = base; i < base + BUCKET * 2; i += 2) {
+			long data = entries[i + 1];
+			if((data & USED) == 0) {
+				victim = i;
+				worth = -1;
+				break;
+			}
+
+			// Entries of earlier searches are worth less than any of the current one
+			int entryDepth = (int)(data >>> 32 & 0xFF);
+			int entryWorth = (int)(data >>> 40 & AGE_MASK) == current ? 256 + entryDepth : entryDepth;
+
+			// The board itself is only replaced by a search at least as deep, unless it is left from an earlier search
+			if((entries[i] ^ data) == board) {
+				if(entryWorth > 256 + depth) return;
+				victim = i;
+				worth = -1;
+				break;
+			}
+			if(entryWorth < worth) {
+				victim = i;
+				worth = entryWorth;
+			}
+		}
+		if(worth >= 256) collisions.increment();
+
+		long data = USED | (long)current << 40 | (long)Math.min(depth, 255) << 32 | Float.floatToRawIntBits(score) & 0xFFFFFFFFL;
+		entries[victim] = board ^ data;
+		entries[victim + 1] = data;
+	}
+
+
+
+	/**
+	 * Starts a new age: the entries stored so far are replaced before those stored from now on
+	 * Called by the owner of the table once per round, not by every search sharing it; the entries stay valid
+	 */
+	public void newSearch() {
+		age.incrementAndGet();
+	}
+
+	/**
+	 * Empties the table and resets its counters
+	 * Must not be called while other threads use it
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+		hits.reset();
+		misses.reset();
+		collisions.reset();
+	}
+
+
+
+	// Index of the first long of the board's bucket
+	private int bucket(long board) {
+		return ((int)(Spawner.mix(board) >>> 32) & bucketMask) * BUCKET * 2;
+	}
+
+	// Number of entries
+	public int capacity() {
+		return entries.length / 2;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// Number of entries of the current search that were replaced by another board
+	public long getCollisions() {
+		return collisions.sum();
+	}
+
+
+
+	/**
+	 * Returns a line describing the table's size and how well it is used, for reports
+	 *
+	 * @return report
+	 */
+	public String report() {
+		long hits = getHits(), probes = hits + getMisses();
+		return String.format("table of %d MB: %d probes, %.1f%% hits, %d collisions",
+				entries.length * 8L >> 20, probes, probes == 0 ? 0 : 100.0 * hits / probes, getCollisions());
+	}
+}
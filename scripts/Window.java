@@ -4,10 +4,17 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 
 
@@ -22,15 +29,27 @@ import javax.swing.JPanel;
 public class Window {
 	
 	private static FrameComponents fc;
+	private static PanelComponents pc;
+	
+	// Set while an update is waiting on the event dispatch thread, so that a fast game loop queues at most one
+	private static final AtomicBoolean updatePending = new AtomicBoolean();
 
 	static void open() {
-		fc = new FrameComponents("2048", new PanelComponents(Grid.grid));
+		pc = new PanelComponents(Grid.grid);
+		fc = new FrameComponents("2048", pc);
 		fc.refreshSize();
 	}
 	
+	// Repaints only what changed since the last update (see PanelComponents.repaintChanges)
+	// Can be called from any thread; the changes are always worked out on the event dispatch thread
 	static void update() {
-		fc.repaint();
-		fc.validate();
+		if(SwingUtilities.isEventDispatchThread()) pc.repaintChanges();
+		else if(updatePending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(() -> {
+				updatePending.set(false);
+				pc.repaintChanges();
+			});
+		}
 	}
 	
 	static void close() {
@@ -102,8 +121,44 @@ class PanelComponents extends JPanel {
 	// Boolean variables indicating whether to display a specific panel on the window
 	static boolean restart = false, quit = false, end = false;
 	
-	// Text fonts
-	Font bigFont = new Font("Rockwell", Font.BOLD, 16), smallFont = new Font("Rockwell", Font.BOLD, 13), hugeFont = new Font("Rockwell", Font.BOLD, 34);
+	// Width of one grid slot in pixels; the 400 pixel wide grid is divided between Grid.size slots
+	private final int cell = 400 / Grid.size;
+	
+	// Block colors by exponent (2 to 2048); larger blocks are white
+	private static final Color[] COLORS = {
+		null,
+		new Color(0,127,0,127), new Color(0,255,0,127), new Color(255,255,0,127),
+		new Color(255,196,0,127), new Color(255,127,0,127), new Color(255,0,0,127),
+		new Color(255,0,127,191), new Color(255,0,255,191), new Color(127,0,255,191),
+		new Color(0,0,255,255), new Color(0,191,255,255)};
+	private static final Color DEFAULT_COLOR = new Color(255,255,255,127);
+	
+	// Sprite cache (see drawTile), indexed by exponent, position within the layer and lift height
+	// Holds at most MAX_SPRITES images; the least recently used one is dropped to make room
+	private static final int MAX_SPRITES = 512;
+	private final BufferedImage[] sprites = new BufferedImage[1 << 15];
+	private final int[][] spriteOffsets = new int[1 << 15][];
+	private final long[] spriteUsed = new long[1 << 15];
+	private int spriteCount = 0;
+	private long spriteClock = 0;
+	
+	// Screen configuration the sprites and the background were rendered for
+	private GraphicsConfiguration spriteConfig;
+	
+	// Grid, border and other parts of the window that never change, rendered once by drawGrid
+	private BufferedImage background;
+	
+	// Area of the scoreboard, repainted when the score or the largest tile changes
+	private static final Rectangle SCOREBOARD = new Rectangle(5, 5, 490, 45);
+	
+	// What the window showed at the last repaintChanges call, to find out what has to be repainted
+	private int[][] shownData = new int[0][0];
+	private int shownScore = -1, shownMax = -1;
+	private String shownStatus = null;
+	private boolean shownQuit, shownRestart, shownEnd, animating = false;
+	
+	// Text fonts; the block labels scale with the slot width
+	Font bigFont = new Font("Rockwell", Font.BOLD, 16), smallFont = new Font("Rockwell", Font.BOLD, 13), hugeFont = new Font("Rockwell", Font.BOLD, 34*cell/100);
 	
 	// Sets size and brings gridData
 	PanelComponents(int[][] grid) {
@@ -128,14 +183,20 @@ class PanelComponents extends JPanel {
 		Graphics2D g2 = (Graphics2D)g;
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
 		
-		// Bottom layer: Grid
-		drawGrid(g);
+		// Bottom layer: Grid, drawn once into an image and then copied; the scoreboard is drawn on top of it
+		if(checkConfiguration() || background == null) background = renderBackground();
+		g.drawImage(background, 0, 0, null);
+		drawScoreboard(g);
 		
 		// Middle layer: Blocks
-		if(Main.inMotion) {
-			drawMovingBlocks(g);
-			drawSpawningBlock(g);
-		} else drawBlocks(g);
+		// Grid is locked so that the game loop does not change the blocks while they are being drawn
+		synchronized(Grid.class) {
+			if(Main.animator != null && Main.animator.isRunning()) {
+				double progress = Main.animator.progress();
+				drawMovingBlocks(g, progress);
+				drawSpawningBlock(g, progress);
+			} else drawBlocks(g);
+		}
 		
 		// Top layer: Panels
 		if(quit) drawQuitPanel(g);
@@ -214,8 +275,8 @@ class PanelComponents extends JPanel {
 		g.drawString("Game Over", 195, 175);
 		
 		g.setFont(smallFont);
-		g.drawString("Your Score: " + Main.score, 195, 245);
-		g.drawString("Largest Tile: " + Main.max, 190, 265);
+		g.drawString("Your Score: " + Main.game.getScore(), 195, 245);
+		g.drawString("Largest Tile: " + Main.game.getMax(), 190, 265);
 		g.drawString("Press Q to quit.", 195, 310);
 		g.drawString("Press R to restart.", 190, 330);
 	}
@@ -229,35 +290,15 @@ class PanelComponents extends JPanel {
 	 * @param g
 	 */
 	void drawBlocks(Graphics g) {
-		Color c;
 		
 		// Nested loop for searching and drawing all existing blocks
 		for(int x = 0; x < gridData.length; x++) {
 			for(int y = 0; y < gridData[x].length; y++) {
-				
-				// Converting data into useful variables
 				int value = gridData[x][y];
-				String label = value+"";
 				if(value == -1) continue;
 				
-				// Grabbing custom set colors/labels modifications for each block value
-				switch(value) {
-				case 2: c = new Color(0,127,0,127); label = "   " + label; break;
-				case 4: c = new Color(0,255,0,127); label = "   " + label; break;
-				case 8: c = new Color(255,255,0,127); label = "   " + label; break;
-				case 16: c = new Color(255,196,0,127); label = "  " + label; break;
-				case 32: c = new Color(255,127,0,127); label = "  " + label; break;
-				case 64: c = new Color(255,0,0,127); label = "  " + label; break;
-				case 128: c = new Color(255,0,127,191); label = " " + label; break;
-				case 256: c = new Color(255,0,255,191); label = " " + label; break;
-				case 512: c = new Color(127,0,255,191); label = " " + label; break;
-				case 1024: c = new Color(0,0,255,255); break;
-				case 2048: c = new Color(0,191,255,255); break;
-				default: c = new Color(255,255,255,127); break;
-				}
-				
-				// Drawing block with the selected color
-				drawBlock(50+x*100, 50+y*100, 10, c, label, g);
+				// Drawing block at its slot
+				drawTile(value, 50+x*cell, 50+y*cell, 10, g);
 			}
 		}
 	}
@@ -268,72 +309,34 @@ class PanelComponents extends JPanel {
 	 * Draws virtual, moving and static blocks that are in between grid slots
 	 * Is not called along with drawBlocks method
 	 * 
-	 * The entire animation is divided into <Main.maxMotionFrame> frames, and the current frame is <Main.motionFrame>
-	 * Main.motionFrame increases upto Main.maxMotionFrame as Main.animate method iterates window update and calls 
-	 * this method frame by frame
+	 * progress goes from 0 to 1 over the animation (see Animator class); the blocks are drawn at that fraction of
+	 * the way, so their positions depend only on the time elapsed and not on how many frames were drawn
 	 * 
 	 * @param g
+	 * @param progress
 	 */
-	void drawMovingBlocks(Graphics g) {
+	void drawMovingBlocks(Graphics g, double progress) {
 		
-		// Drawing all moving blocks from animation queue
-		for(int i = 0; i < Grid.motionList.size(); i++) {
+		// Drawing all moving blocks from the last move's events; the new block is drawn by drawSpawningBlock
+		MoveEvents events = Grid.events;
+		for(int i = 0; i < events.size(); i++) {
+			if(events.isSpawned(i)) continue;
 			
 			// Converting data into useful variables
-			Integer[] data = Grid.motionList.get(i);
-			Color c;
-			int x1 = data[0]*100+50, y1 = data[1]*100+50, x2 = data[2]*100+50, y2 = data[3]*100+50, value = data[4];
-			String label = value+"";
-			if(value == -1) continue;
+			int from = events.from(i), to = events.to(i);
+			int x1 = Main.game.gridX(from)*cell+50, y1 = Main.game.gridY(from)*cell+50, x2 = Main.game.gridX(to)*cell+50, y2 = Main.game.gridY(to)*cell+50;
 			
-			// Grabbing custom set colors/labels modifications for each block value
-			switch(value) {
-			case 2: c = new Color(0,127,0,127); label = "   " + label; break;
-			case 4: c = new Color(0,255,0,127); label = "   " + label; break;
-			case 8: c = new Color(255,255,0,127); label = "   " + label; break;
-			case 16: c = new Color(255,196,0,127); label = "  " + label; break;
-			case 32: c = new Color(255,127,0,127); label = "  " + label; break;
-			case 64: c = new Color(255,0,0,127); label = "  " + label; break;
-			case 128: c = new Color(255,0,127,191); label = " " + label; break;
-			case 256: c = new Color(255,0,255,191); label = " " + label; break;
-			case 512: c = new Color(127,0,255,191); label = " " + label; break;
-			case 1024: c = new Color(0,0,255,255); break;
-			case 2048: c = new Color(0,191,255,255); break;
-			default: c = new Color(255,255,255,127); break;
-			}
-			
-			// Drawing block with the selected color
-			drawBlock(x1+((x2-x1)/Main.maxMotionFrame*Main.motionFrame), y1+((y2-y1)/Main.maxMotionFrame*Main.motionFrame), 10, c, label, g);
+			// Drawing block on its way
+			drawTile(Board.toValue(events.exponent(i)), x1+(int)Math.round((x2-x1)*progress), y1+(int)Math.round((y2-y1)*progress), 10, g);
 		}
 		
 		// Drawing static blocks (unanimated blocks)
-		Color c;
 		for(int x = 0; x < Grid.staticGrid.length; x++) {
 			for(int y = 0; y < Grid.staticGrid[x].length; y++) {
-				
-				// Converting data into useful variables
 				int value = Grid.staticGrid[x][y];
-				String label = value+"";
 				if(value == -1) continue;
 				
-				// Grabbing custom set colors/labels modifications for each block value
-				switch(value) {
-				case 2: c = new Color(0,127,0,127); label = "   " + label; break;
-				case 4: c = new Color(0,255,0,127); label = "   " + label; break;
-				case 8: c = new Color(255,255,0,127); label = "   " + label; break;
-				case 16: c = new Color(255,196,0,127); label = "  " + label; break;
-				case 32: c = new Color(255,127,0,127); label = "  " + label; break;
-				case 64: c = new Color(255,0,0,127); label = "  " + label; break;
-				case 128: c = new Color(255,0,127,191); label = " " + label; break;
-				case 256: c = new Color(255,0,255,191); label = " " + label; break;
-				case 512: c = new Color(127,0,255,191); label = " " + label; break;
-				case 1024: c = new Color(0,0,255,255); break;
-				case 2048: c = new Color(0,191,255,255); break;
-				default: c = new Color(255,255,255,127); break;
-				}
-				
-				// Drawing block with the selected color
-				drawBlock(50+x*100, 50+y*100, 10, c, label, g);
+				drawTile(value, 50+x*cell, 50+y*cell, 10, g);
 			}
 		}
 	}
@@ -345,44 +348,218 @@ class PanelComponents extends JPanel {
 	 * Is not called along with drawBlocks method
 	 * Is called after drawMovingBlocks method
 	 * 
-	 * Animation works similarly to drawMovingBlocks method (how Main.maxMotionFrame and Main.motionFrame variables
-	 * determine the current frame of this spawning animation)
+	 * Animation works similarly to drawMovingBlocks method (how progress determines the current frame of this
+	 * spawning animation)
+	 * 
+	 * @param g
+	 * @param progress
+	 */
+	void drawSpawningBlock(Graphics g, double progress) {
+		drawTile(Grid.newBlock[2], Grid.newBlock[0]*cell+50, Grid.newBlock[1]*cell+50, (int)Math.round(10*progress), g);
+	}
+	
+	
+	
+	/**
+	 * Returns the color of a block of the given value
+	 * 
+	 * @param value
+	 * @return color
+	 */
+	static Color color(int value) {
+		int exponent = Board.toExponent(value);
+		return exponent < COLORS.length ? COLORS[exponent] : DEFAULT_COLOR;
+	}
+	
+	
+	
+	/**
+	 * Returns the label of a block of the given value, padded with spaces so that short numbers are centered
+	 * 
+	 * @param value
+	 * @return label
+	 */
+	static String label(int value) {
+		if(value < 16) return "   " + value;
+		if(value < 128) return "  " + value;
+		if(value < 1024) return " " + value;
+		return "" + value;
+	}
+	
+	
+	
+	/**
+	 * Draws a block through the sprite cache
+	 * The first time a block of some value, lift height and position within its layer is drawn, it is rendered by
+	 * drawBlock into an image of its own; every later time that image is copied, which is much faster than drawing
+	 * the antialiased polygons and text again. Coordinates are the same as for drawBlock.
 	 * 
+	 * @param value
+	 * @param x
+	 * @param y
+	 * @param z
 	 * @param g
 	 */
-	void drawSpawningBlock(Graphics g) {
-		
-		// Converting data into useful variables
-		int x = Grid.newBlock[0]*100+50, y = Grid.newBlock[1]*100+50, value = Grid.newBlock[2];
-		String label = value + "";
-		Color c;
-		
-		// Grabbing custom set colors/labels modifications for each block value
-		switch(value) {
-		case 2: c = new Color(0,127,0,127); label = "   " + label; break;
-		case 4: c = new Color(0,255,0,127); label = "   " + label; break;
-		case 8: c = new Color(255,255,0,127); label = "   " + label; break;
-		case 16: c = new Color(255,196,0,127); label = "  " + label; break;
-		case 32: c = new Color(255,127,0,127); label = "  " + label; break;
-		case 64: c = new Color(255,0,0,127); label = "  " + label; break;
-		case 128: c = new Color(255,0,127,191); label = " " + label; break;
-		case 256: c = new Color(255,0,255,191); label = " " + label; break;
-		case 512: c = new Color(127,0,255,191); label = " " + label; break;
-		case 1024: c = new Color(0,0,255,255); break;
-		case 2048: c = new Color(0,191,255,255); break;
-		default: c = new Color(255,255,255,127); break;
+	void drawTile(int value, int x, int y, int z, Graphics g) {
+		
+		// Position within the layer, as worked out by drawBlock
+		int slotX = (x-50+cell/2)/cell % Grid.layerSize, slotY = (y-50+cell/2)/cell % Grid.layerSize;
+		int key = Board.toExponent(value) | slotX << 5 | slotY << 8 | Math.min(z, 15) << 11;
+		
+		checkConfiguration();
+		if(sprites[key] == null) renderSprite(key, value, slotX, slotY, z, spriteConfig);
+		spriteUsed[key] = ++spriteClock;
+		
+		// Blocks outside the area being repainted are skipped
+		BufferedImage sprite = sprites[key];
+		int[] offset = spriteOffsets[key];
+		if(g.hitClip(x+offset[0], y+offset[1], sprite.getWidth(), sprite.getHeight())) g.drawImage(sprite, x+offset[0], y+offset[1], null);
+	}
+	
+	
+	
+	/**
+	 * Drops all sprites and the background when the window has moved to a screen with another configuration,
+	 * so that they are rendered again for the new screen
+	 * 
+	 * @return whether the configuration changed
+	 */
+	private boolean checkConfiguration() {
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		if(config == spriteConfig) return false;
+		
+		Arrays.fill(sprites, null);
+		spriteCount = 0;
+		background = null;
+		spriteConfig = config;
+		return true;
+	}
+	
+	
+	
+	/**
+	 * Requests a repaint of the parts of the window that changed since the last call
+	 * These are:
+	 * 	- the slots whose blocks changed
+	 * 	- the paths of all blocks moved by the last move, while its animation is played and once more afterwards
+	 * 	- the scoreboard, if the score, the largest tile or the replay status changed
+	 * 	- the whole window, if a panel (quit, restart, game over) was opened or closed
+	 * Only called on the event dispatch thread (see Window.update), which owns what the window showed last;
+	 * Swing merges the requested areas and paints them afterwards
+	 */
+	void repaintChanges() {
+		
+		// Panels cover most of the window
+		if(quit != shownQuit || restart != shownRestart || end != shownEnd) {
+			shownQuit = quit;
+			shownRestart = restart;
+			shownEnd = end;
+			repaint();
+		}
+		
+		String status = Main.viewer == null ? null : Main.viewer.status();
+		if(Main.game.getScore() != shownScore || Main.game.getMax() != shownMax || (status != null && !status.equals(shownStatus))) {
+			shownScore = Main.game.getScore();
+			shownMax = Main.game.getMax();
+			shownStatus = status;
+			repaint(SCOREBOARD);
+		}
+		
+		synchronized(Grid.class) {
+			
+			// Animated blocks; the frame after the animation ends draws them in their new slots
+			boolean running = Main.animator != null && Main.animator.isRunning();
+			if(running || animating) {
+				MoveEvents events = Grid.events;
+				for(int i = 0; i < events.size(); i++) {
+					int from = events.from(i), to = events.to(i);
+					repaint(slotBounds(Main.game.gridX(from), Main.game.gridY(from)).union(slotBounds(Main.game.gridX(to), Main.game.gridY(to))));
+				}
+			}
+			animating = running;
+			
+			// Blocks that changed without being animated, e.g. after a restart
+			if(shownData.length != gridData.length || shownData[0].length != gridData[0].length) {
+				shownData = new int[gridData.length][gridData[0].length];
+				for(int[] column : shownData) Arrays.fill(column, -2);
+			}
+			for(int x = 0; x < gridData.length; x++) {
+				for(int y = 0; y < gridData[x].length; y++) {
+					if(gridData[x][y] == shownData[x][y]) continue;
+					shownData[x][y] = gridData[x][y];
+					repaint(slotBounds(x, y));
+				}
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the area a block in the given slot can cover, including its lifted square and outlines
+	 * 
+	 * @param x
+	 * @param y
+	 * @return bounds
+	 */
+	Rectangle slotBounds(int x, int y) {
+		int margin = (Grid.layerSize/2 + 1) * cell/10 + 2;
+		return new Rectangle(50+x*cell-margin, 50+y*cell-margin, cell+2*margin, cell+2*margin);
+	}
+	
+	
+	
+	/**
+	 * Renders a block into a new sprite, evicting the least recently used sprite if the cache is full
+	 * 
+	 * @param key
+	 * @param value
+	 * @param slotX
+	 * @param slotY
+	 * @param z
+	 * @param config
+	 */
+	private void renderSprite(int key, int value, int slotX, int slotY, int z, GraphicsConfiguration config) {
+		if(spriteCount == MAX_SPRITES) {
+			int eldest = -1;
+			for(int i = 0; i < sprites.length; i++) {
+				if(sprites[i] != null && (eldest < 0 || spriteUsed[i] < spriteUsed[eldest])) eldest = i;
+			}
+			sprites[eldest].flush();
+			sprites[eldest] = null;
+			spriteCount--;
 		}
 		
-		// Drawing block with the selected color
-		drawBlock(x, y, (int)(10/(double)Main.maxMotionFrame*(double)Main.motionFrame), c, label, g);
+		// Bounds of the block relative to its corner: the square plus the lifted square, with room for the outlines
+		int lift = z*cell/100, half = Grid.layerSize/2, l = cell-1;
+		int xE = (slotX-half)*lift, yE = (slotY-half)*lift;
+		int left = Math.min(0, xE) - 1, top = Math.min(0, yE) - 1;
+		int width = Math.max(l, xE+l+lift) + 2 - left, height = Math.max(l, yE+l+lift) + 2 - top;
+		
+		BufferedImage sprite = config == null
+				? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE)
+				: config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		
+		// Drawing the block as if it were in slot (slotX, slotY), moved so that its bounds start at (0, 0)
+		Graphics2D g = sprite.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+		int x0 = 50+slotX*cell, y0 = 50+slotY*cell;
+		g.translate(-x0-left, -y0-top);
+		drawBlock(x0, y0, z, color(value), label(value), g);
+		g.dispose();
+		
+		sprites[key] = sprite;
+		spriteOffsets[key] = new int[] {left, top};
+		spriteCount++;
 	}
 	
 	
 	
 	/**
 	 * Draws a block at specified location and of specified height, color, and label
-	 * Coordinates must correspond to actual coordinates in the JPanel, not the 0-4 coordinate
-	 * system used in Grid class.
+	 * Coordinates must correspond to actual coordinates in the JPanel, not the 0-size coordinate
+	 * system used in Grid class. Height is given for a 100 pixel slot and scaled to the actual slot width.
+	 * Blocks are normally drawn through drawTile, which keeps each rendered block as a sprite.
 	 * 
 	 * @param x
 	 * @param y
@@ -396,21 +573,24 @@ class PanelComponents extends JPanel {
 		// Original coordinates/dimensions of the block
 		int x0 = x;
 		int y0 = y;
-		int l = 99;
+		int l = cell-1;
+		z = z*cell/100;
 		
-		// Conversion into coordinates used in Grid class; these will be used for determining how the block will be displayed
-		x = x/100;
-		y = y/100;
+		// Conversion into coordinates used in Grid class (rounded to the nearest slot) within the block's layer;
+		// these will be used for determining how the block will be displayed
+		x = (x-50+cell/2)/cell % Grid.layerSize;
+		y = (y-50+cell/2)/cell % Grid.layerSize;
 		
 		// Extended coordinates of the block; represents the "lifted" square
-		int xE = (x-2)*z;
-		int yE = (y-2)*z;
+		int half = Grid.layerSize/2;
+		int xE = (x-half)*z;
+		int yE = (y-half)*z;
 		
 		// Drawing filled, colored hexagons which represents the 3D block
 		g.setColor(c);
-		if(x < 2 && y < 2) g.fillPolygon(new int[] {x0+xE,x0+xE+l+z,x0+l,x0+l,x0,x0+xE}, new int[] {y0+yE,y0+yE,y0,y0+l,y0+l,y0+yE+l+z}, 6);
-		else if(x > 1 && y < 2) g.fillPolygon(new int[] {x0,x0+xE,x0+xE+l+z,x0+xE+l+z,x0+l,x0}, new int[] {y0,y0+yE,y0+yE,y0+yE+l+z,y0+l,y0+l}, 6);
-		else if(x > 1 && y > 1) g.fillPolygon(new int[] {x0,x0+l,x0+xE+l+z,x0+xE+l+z,x0+xE,x0}, new int[] {y0,y0,y0+yE,y0+yE+l+z,y0+yE+l+z,y0+l}, 6);
+		if(x < half && y < half) g.fillPolygon(new int[] {x0+xE,x0+xE+l+z,x0+l,x0+l,x0,x0+xE}, new int[] {y0+yE,y0+yE,y0,y0+l,y0+l,y0+yE+l+z}, 6);
+		else if(x >= half && y < half) g.fillPolygon(new int[] {x0,x0+xE,x0+xE+l+z,x0+xE+l+z,x0+l,x0}, new int[] {y0,y0+yE,y0+yE,y0+yE+l+z,y0+l,y0+l}, 6);
+		else if(x >= half && y >= half) g.fillPolygon(new int[] {x0,x0+l,x0+xE+l+z,x0+xE+l+z,x0+xE,x0}, new int[] {y0,y0,y0+yE,y0+yE+l+z,y0+yE+l+z,y0+l}, 6);
 		else g.fillPolygon(new int[] {x0+xE,x0+xE,x0,x0+l,x0+l,x0+xE+l+z}, new int[] {y0+yE+l+z,y0+yE,y0,y0,y0+l,y0+yE+l+z}, 6);
 		
 		// Drawing 3D outlines of the block
@@ -424,7 +604,28 @@ class PanelComponents extends JPanel {
 		
 		// Drawing the label of the block
 		g.setFont(hugeFont);
-		g.drawString(label, x0+13+xE/2, y0+62+yE/2);
+		g.drawString(label, x0+13*cell/100+xE/2, y0+62*cell/100+yE/2);
+	}
+	
+	
+	
+	/**
+	 * Renders the background (see drawGrid) into an image for the current screen configuration
+	 * 
+	 * @return background
+	 */
+	private BufferedImage renderBackground() {
+		BufferedImage image = spriteConfig == null
+				? new BufferedImage(defaultWidth, defaultHeight, BufferedImage.TYPE_INT_RGB)
+				: spriteConfig.createCompatibleImage(defaultWidth, defaultHeight, Transparency.OPAQUE);
+		
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(getBackground());
+		g.fillRect(0, 0, defaultWidth, defaultHeight);
+		drawGrid(g);
+		g.dispose();
+		return image;
 	}
 	
 	
@@ -434,7 +635,8 @@ class PanelComponents extends JPanel {
 	 * These featues include:
 	 * 	- Grid
 	 * 	- Grid border
-	 * 	- Scoreboard
+	 * 	- Layer separators and hint (cube only)
+	 * Nothing drawn here may change during a game, as it is only drawn once into the cached background
 	 * 
 	 * @param g
 	 */
@@ -447,19 +649,37 @@ class PanelComponents extends JPanel {
 		g.fillRect(50,50,400,400);
 		g.setColor(Color.BLACK);
 		g.drawRect(50,50,400,400);
-		g.drawLine(50,150,450,150);
-		g.drawLine(50,250,450,250);
-		g.drawLine(50,350,450,350);
-		g.drawLine(150,50,150,450);
-		g.drawLine(250,50,250,450);
-		g.drawLine(350,50,350,450);
-		
-		// Drawing scoreboard
+		for(int i = 1; i < Grid.size; i++) {
+			g.drawLine(50,50+i*cell,450,50+i*cell);
+			g.drawLine(50+i*cell,50,50+i*cell,450);
+		}
+		
+		// Separating the layers of a cube
+		g.setColor(Color.DARK_GRAY);
+		for(int i = Grid.layerSize; i < Grid.size; i += Grid.layerSize) {
+			g.fillRect(48,48+i*cell,404,5);
+			g.fillRect(48+i*cell,48,5,404);
+		}
+		
+		g.setColor(Color.LIGHT_GRAY);
+		g.setFont(smallFont);
+		if(Grid.layerSize != Grid.size) g.drawString("Layers 1-4, left to right, top to bottom. I: in, O: out", 60, 475);
+	}
+	
+	
+	
+	/**
+	 * Draws the scoreboard: score and largest tile
+	 * 
+	 * @param g
+	 */
+	void drawScoreboard(Graphics g) {
 		g.setColor(Color.WHITE);
 		g.setFont(bigFont);
-		g.drawString("Score: " + Main.score, 60, 27);
+		g.drawString("Score: " + Main.game.getScore(), 60, 27);
 		g.setColor(Color.LIGHT_GRAY);
 		g.setFont(smallFont);
-		g.drawString("Largest Tile: " + Main.max, 60, 43);
+		g.drawString("Largest Tile: " + Main.game.getMax(), 60, 43);
+		if(Main.viewer != null) g.drawString(Main.viewer.status(), 230, 43);
 	}
 }